@@ -106,11 +106,8 @@ public class FileFunctions {
     }
 
     public static int readFullInt(byte[] data, int offset) {
-        ByteBuffer buf = ByteBuffer.allocate(4);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        buf.put(data, offset, 4);
-        buf.rewind();
-        return buf.getInt();
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16)
+                | ((data[offset + 3] & 0xFF) << 24);
     }
 
     public static int readFullIntBigEndian(byte[] data, int offset) {
@@ -133,8 +130,10 @@ public class FileFunctions {
     }
 
     public static void writeFullInt(byte[] data, int offset, int value) {
-        byte[] valueBytes = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
-        System.arraycopy(valueBytes, 0, data, offset, 4);
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+        data[offset + 2] = (byte) ((value >> 16) & 0xFF);
+        data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
 
     public static void writeFullIntBigEndian(byte[] data, int offset, int value) {
@@ -0,0 +1,149 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  FreeSpaceAllocator.java - hands out free space in a ROM without       --*/
+/*--                            searching for it every time.                --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Keeps track of the runs of free space bytes in part of a ROM, so that space can be allocated
+ * from them without searching the ROM again each time. The runs are found with one scan when
+ * the allocator is made, and are then indexed both by offset and by length, so that the
+ * smallest run an allocation fits in can be found straight away.
+ * <p>
+ * Allocations keep the same padding RomFunctions.freeSpaceFinder does: the space returned
+ * starts at least 2 bytes into a run of free space (so that terminators just before it are
+ * left alone), and long aligned allocations are 4-aligned. Writes made to the ROM without going
+ * through the allocator are noticed when a run they went into is next used.
+ */
+public class FreeSpaceAllocator {
+
+    // Anything shorter can't hold even a single byte after its padding
+    private static final int MIN_RUN_LENGTH = 3;
+
+    private final byte[] rom;
+    private final byte freeSpace;
+    private final TreeMap<Integer, Integer> runEnds = new TreeMap<>();
+    // Each run's length in the upper half and its start in the lower half
+    private final TreeSet<Long> runsByLength = new TreeSet<>();
+
+    /**
+     * Find the free space between start and end.
+     */
+    public FreeSpaceAllocator(byte[] rom, byte freeSpace, int start, int end) {
+        this.rom = rom;
+        this.freeSpace = freeSpace;
+        scan(start, end);
+    }
+
+    /**
+     * @return The offset of the space allocated, or -1 if there is no run of free space it fits in
+     */
+    public int allocate(int amount, boolean longAligned) {
+        int needed = amount + (longAligned ? 5 : 2);
+        while (true) {
+            Long fit = runsByLength.ceiling(key(needed, 0));
+            if (fit == null) {
+                return -1;
+            }
+            int start = (int) (long) fit;
+            int end = runEnds.get(start);
+            removeRun(start);
+            if (!isFree(start, start + needed)) {
+                // Some of it has been written to since it was scanned, so find out what's left
+                scan(start, end);
+                continue;
+            }
+            int offset = longAligned ? (start + 5) & ~3 : start + 2;
+            addRun(offset + amount, end);
+            return offset;
+        }
+    }
+
+    /**
+     * Fill the given space with the free space byte, and make it available to allocate again.
+     */
+    public void release(int offset, int length) {
+        Arrays.fill(rom, offset, offset + length, freeSpace);
+        int start = offset;
+        int end = offset + length;
+        Map.Entry<Integer, Integer> before = runEnds.floorEntry(start);
+        if (before != null && before.getValue() >= start) {
+            start = before.getKey();
+            end = Math.max(end, before.getValue());
+            removeRun(before.getKey());
+        }
+        Map.Entry<Integer, Integer> after;
+        while ((after = runEnds.ceilingEntry(start)) != null && after.getKey() <= end) {
+            end = Math.max(end, after.getValue());
+            removeRun(after.getKey());
+        }
+        addRun(start, end);
+    }
+
+    private void scan(int start, int end) {
+        int pos = start;
+        while (pos < end) {
+            if (rom[pos] != freeSpace) {
+                pos++;
+                continue;
+            }
+            int runStart = pos;
+            while (pos < end && rom[pos] == freeSpace) {
+                pos++;
+            }
+            addRun(runStart, pos);
+        }
+    }
+
+    private boolean isFree(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (rom[i] != freeSpace) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addRun(int start, int end) {
+        if (end - start >= MIN_RUN_LENGTH) {
+            runEnds.put(start, end);
+            runsByLength.add(key(end - start, start));
+        }
+    }
+
+    private void removeRun(int start) {
+        Integer end = runEnds.remove(start);
+        if (end != null) {
+            runsByLength.remove(key(end - start, start));
+        }
+    }
+
+    private static long key(int length, int start) {
+        return ((long) length << 32) | start;
+    }
+}
@@ -0,0 +1,173 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  MultiPatternSearch.java - finds several byte patterns in one pass     --*/
+/*--                            over a ROM.                                 --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Searches for any number of byte patterns at once. The patterns are added first and then
+ * compiled into an Aho-Corasick automaton, which finds every one of them in a single pass over
+ * the haystack. For each pattern, the offsets found are the same as RomFunctions.search would
+ * give: in order, and without overlapping other matches of that same pattern.
+ */
+public class MultiPatternSearch {
+
+    private static final int[] NO_PATTERNS = new int[0];
+
+    private final List<byte[]> patterns = new ArrayList<>();
+
+    // The compiled automaton, rebuilt when a pattern has been added since the last search
+    private int[] transitions;
+    private int[][] matches;
+
+    /**
+     * @return The index of the pattern's results in what search returns
+     */
+    public int add(byte[] pattern) {
+        if (pattern.length == 0) {
+            throw new IllegalArgumentException("Can't search for an empty pattern");
+        }
+        patterns.add(pattern.clone());
+        transitions = null;
+        return patterns.size() - 1;
+    }
+
+    public List<List<Integer>> search(byte[] haystack) {
+        return search(haystack, 0, haystack.length);
+    }
+
+    /**
+     * Find every pattern between beginOffset and endOffset.
+     *
+     * @return The offsets of each pattern, in the order the patterns were added
+     */
+    public List<List<Integer>> search(byte[] haystack, int beginOffset, int endOffset) {
+        if (transitions == null) {
+            compile();
+        }
+        int patternCount = patterns.size();
+        List<List<Integer>> results = new ArrayList<>(patternCount);
+        int[] nextAllowedStart = new int[patternCount];
+        for (int p = 0; p < patternCount; p++) {
+            results.add(new ArrayList<>());
+        }
+        int state = 0;
+        for (int i = beginOffset; i < endOffset; i++) {
+            state = transitions[(state << 8) | (haystack[i] & 0xFF)];
+            for (int p : matches[state]) {
+                int start = i + 1 - patterns.get(p).length;
+                if (start >= nextAllowedStart[p]) {
+                    results.get(p).add(start);
+                    nextAllowedStart[p] = i + 1;
+                }
+            }
+        }
+        return results;
+    }
+
+    private void compile() {
+        int maxStates = 1;
+        for (byte[] pattern : patterns) {
+            maxStates += pattern.length;
+        }
+        int[] goTo = new int[maxStates << 8];
+        Arrays.fill(goTo, -1);
+        int[][] ends = new int[maxStates][];
+        int stateCount = 1;
+
+        // Build the trie of patterns
+        for (int p = 0; p < patterns.size(); p++) {
+            int state = 0;
+            for (byte b : patterns.get(p)) {
+                int edge = (state << 8) | (b & 0xFF);
+                if (goTo[edge] < 0) {
+                    goTo[edge] = stateCount++;
+                }
+                state = goTo[edge];
+            }
+            ends[state] = append(ends[state], p);
+        }
+
+        // Then fill in the missing edges breadth-first from each state's failure link, so that
+        // the search never has to backtrack. A state also matches whatever its failure link does.
+        int[] failure = new int[stateCount];
+        int[][] stateMatches = new int[stateCount][];
+        stateMatches[0] = NO_PATTERNS;
+        int[] queue = new int[stateCount];
+        int head = 0;
+        int tail = 0;
+        for (int b = 0; b < 256; b++) {
+            int child = goTo[b];
+            if (child < 0) {
+                goTo[b] = 0;
+            } else {
+                failure[child] = 0;
+                stateMatches[child] = ends[child] == null ? NO_PATTERNS : ends[child];
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int fail = failure[state];
+            for (int b = 0; b < 256; b++) {
+                int edge = (state << 8) | b;
+                int child = goTo[edge];
+                if (child < 0) {
+                    goTo[edge] = goTo[(fail << 8) | b];
+                } else {
+                    int childFail = goTo[(fail << 8) | b];
+                    failure[child] = childFail;
+                    stateMatches[child] = merge(ends[child], stateMatches[childFail]);
+                    queue[tail++] = child;
+                }
+            }
+        }
+        transitions = Arrays.copyOf(goTo, stateCount << 8);
+        matches = stateMatches;
+    }
+
+    private static int[] append(int[] array, int value) {
+        if (array == null) {
+            return new int[] { value };
+        }
+        int[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    private static int[] merge(int[] own, int[] inherited) {
+        if (own == null) {
+            return inherited;
+        }
+        if (inherited.length == 0) {
+            return own;
+        }
+        int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+        System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+        return merged;
+    }
+}
@@ -309,53 +309,16 @@ public class RomFunctions {
         moveDesc = moveDesc.replace("Sp. Def", "Sp__Def");
         moveDesc = moveDesc.replace("SP. ATK", "SP__ATK");
         moveDesc = moveDesc.replace("SP. DEF", "SP__DEF");
-        String[] words = moveDesc.split(" ");
-        StringBuilder fullDesc = new StringBuilder();
-        StringBuilder thisLine = new StringBuilder();
-        int currLineWC = 0;
-        int currLineCC = 0;
-        int linesWritten = 0;
-        for (int i = 0; i < words.length; i++) {
-            // Reverse the spatk/spdef preservation from above
-            words[i] = words[i].replace("SP__", "SP. ");
-            words[i] = words[i].replace("Sp__", "Sp. ");
-            int reqLength = ssd.lengthFor(words[i]);
-            if (currLineWC > 0) {
-                reqLength++;
-            }
-            if (currLineCC + reqLength <= lineSize) {
-                // add to current line
-                if (currLineWC > 0) {
-                    thisLine.append(' ');
-                }
-                thisLine.append(words[i]);
-                currLineWC++;
-                currLineCC += reqLength;
-            } else {
-                // Save current line, if applicable
-                if (currLineWC > 0) {
-                    if (linesWritten > 0) {
-                        fullDesc.append(newline);
-                    }
-                    fullDesc.append(thisLine.toString());
-                    linesWritten++;
-                    thisLine = new StringBuilder();
-                }
-                // Start the new line
-                thisLine.append(words[i]);
-                currLineWC = 1;
-                currLineCC = ssd.lengthFor(words[i]);
+        List<String> words = splitLiteral(moveDesc, " ");
+        for (int i = 0; i < words.size(); i++) {
+            String word = words.get(i);
+            if (word.contains("__")) {
+                // Reverse the spatk/spdef preservation from above
+                words.set(i, word.replace("SP__", "SP. ").replace("Sp__", "Sp. "));
             }
         }
-
-        // If the last line has anything add it
-        if (currLineWC > 0) {
-            if (linesWritten > 0) {
-                fullDesc.append(newline);
-            }
-            fullDesc.append(thisLine.toString());
-        }
-
+        StringBuilder fullDesc = new StringBuilder(moveDesc.length() + 16);
+        reflow(words, fullDesc, newline, newline, lineSize, Integer.MAX_VALUE, ssd);
         return fullDesc.toString();
     }
 
@@ -384,75 +347,15 @@ public class RomFunctions {
             }
         }
         // Split on paragraphs and deal with each one individually
-        String[] oldParagraphs = text.split(newpara.replace("\\", "\\\\"));
-        StringBuilder finalResult = new StringBuilder();
+        List<String> oldParagraphs = splitLiteral(text, newpara);
+        StringBuilder finalResult = new StringBuilder(text.length() + 16);
         int sentenceNewLineSize = Math.max(10, maxLineLength / 2);
-        for (int para = 0; para < oldParagraphs.length; para++) {
-            String[] words = oldParagraphs[para].split(" ");
-            StringBuilder fullPara = new StringBuilder();
-            StringBuilder thisLine = new StringBuilder();
-            int currLineWC = 0;
-            int currLineCC = 0;
-            int linesWritten = 0;
-            char currLineLastChar = 0;
-            for (String word : words) {
-                int reqLength = ssd.lengthFor(word);
-                if (currLineWC > 0) {
-                    reqLength++;
-                }
-                if ((currLineCC + reqLength > maxLineLength)
-                        || (currLineCC >= sentenceNewLineSize && (currLineLastChar == '.' || currLineLastChar == '?'
-                        || currLineLastChar == '!' || currLineLastChar == '…' || currLineLastChar == ','))) {
-                    // new line
-                    // Save current line, if applicable
-                    if (currLineWC > 0) {
-                        if (linesWritten > 1) {
-                            fullPara.append(extraline);
-                        } else if (linesWritten == 1) {
-                            fullPara.append(newline);
-                        }
-                        fullPara.append(thisLine.toString());
-                        linesWritten++;
-                        thisLine = new StringBuilder();
-                    }
-                    // Start the new line
-                    thisLine.append(word);
-                    currLineWC = 1;
-                    currLineCC = ssd.lengthFor(word);
-                    if (word.length() == 0) {
-                        currLineLastChar = 0;
-                    } else {
-                        currLineLastChar = word.charAt(word.length() - 1);
-                    }
-                } else {
-                    // add to current line
-                    if (currLineWC > 0) {
-                        thisLine.append(' ');
-                    }
-                    thisLine.append(word);
-                    currLineWC++;
-                    currLineCC += reqLength;
-                    if (word.length() == 0) {
-                        currLineLastChar = 0;
-                    } else {
-                        currLineLastChar = word.charAt(word.length() - 1);
-                    }
-                }
-            }
-
-            // If the last line has anything add it
-            if (currLineWC > 0) {
-                if (linesWritten > 1) {
-                    fullPara.append(extraline);
-                } else if (linesWritten == 1) {
-                    fullPara.append(newline);
-                }
-                fullPara.append(thisLine.toString());
-            }
+        for (int para = 0; para < oldParagraphs.size(); para++) {
             if (para > 0) {
                 finalResult.append(newpara);
             }
-            finalResult.append(fullPara.toString());
+            reflow(splitLiteral(oldParagraphs.get(para), " "), finalResult, newline, extraline, maxLineLength,
+                    sentenceNewLineSize, ssd);
         }
         if (endsWithPara) {
             finalResult.append(newpara);
@@ -460,6 +363,68 @@ public class RomFunctions {
         return finalResult.toString();
     }
 
+    /**
+     * Greedily pack words into lines of at most maxLineLength, appending them to out. Each word
+     * is only measured once. The second line is started with newline and any after it with
+     * extraline, and a new line is also started once a line of sentenceNewLineSize or more ends
+     * in punctuation. A word too long for a line of its own still gets one.
+     */
+    private static void reflow(List<String> words, StringBuilder out, String newline, String extraline,
+            int maxLineLength, int sentenceNewLineSize, StringSizeDeterminer ssd) {
+        int currLineWC = 0;
+        int currLineCC = 0;
+        int linesWritten = 0;
+        char currLineLastChar = 0;
+        for (String word : words) {
+            int wordLength = ssd.lengthFor(word);
+            int reqLength = currLineWC > 0 ? wordLength + 1 : wordLength;
+            if (currLineCC + reqLength > maxLineLength
+                    || (currLineCC >= sentenceNewLineSize && (currLineLastChar == '.' || currLineLastChar == '?'
+                    || currLineLastChar == '!' || currLineLastChar == '…' || currLineLastChar == ','))) {
+                // new line, if the current one has anything on it
+                if (currLineWC > 0) {
+                    linesWritten++;
+                    out.append(linesWritten > 1 ? extraline : newline);
+                }
+                currLineWC = 1;
+                currLineCC = wordLength;
+            } else {
+                // add to current line
+                if (currLineWC > 0) {
+                    out.append(' ');
+                }
+                currLineWC++;
+                currLineCC += reqLength;
+            }
+            out.append(word);
+            currLineLastChar = word.isEmpty() ? 0 : word.charAt(word.length() - 1);
+        }
+    }
+
+    /**
+     * Split text at each occurrence of separator, the same way String.split would with the
+     * separator as a literal: trailing empty pieces are left out, and text without the separator
+     * comes back as it is, even if it's empty.
+     */
+    private static List<String> splitLiteral(String text, String separator) {
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        int next;
+        while ((next = text.indexOf(separator, start)) >= 0) {
+            pieces.add(text.substring(start, next));
+            start = next + separator.length();
+        }
+        pieces.add(text.substring(start));
+        if (pieces.size() == 1) {
+            return pieces;
+        }
+        int size = pieces.size();
+        while (size > 0 && pieces.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return pieces.subList(0, size);
+    }
+
     public interface StringSizeDeterminer {
         int lengthFor(String encodedText);
     }
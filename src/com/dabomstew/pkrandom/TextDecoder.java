@@ -0,0 +1,108 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  TextDecoder.java - decodes single-byte encoded game text through a    --*/
+/*--                     character table.                                   --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+/**
+ * Turns the one-byte-per-character text of the GB, GBC and GBA games into strings. Bytes with
+ * a table entry become that entry, and any other byte becomes a \xXX escape. If the game has a
+ * variable code, that byte and the one after it become a \vXX escape.
+ */
+public class TextDecoder {
+
+    private static final String[] HEX_ESCAPES = new String[256];
+    private static final String[] VARIABLE_ESCAPES = new String[256];
+
+    static {
+        String digits = "0123456789ABCDEF";
+        for (int i = 0; i < 256; i++) {
+            String hex = "" + digits.charAt(i >> 4) + digits.charAt(i & 0xF);
+            HEX_ESCAPES[i] = "\\x" + hex;
+            VARIABLE_ESCAPES[i] = "\\v" + hex;
+        }
+    }
+
+    // Shared with the handler that fills it in, so entries loaded later are picked up too
+    private final String[] table;
+    private final int terminator;
+    private final int variableCode;
+
+    /**
+     * @param table        The text of each byte value, or null where there is none
+     * @param terminator   The byte that ends a string
+     * @param variableCode The byte that introduces a variable, or -1 if the game has none
+     */
+    public TextDecoder(String[] table, int terminator, int variableCode) {
+        this.table = table;
+        this.terminator = terminator;
+        this.variableCode = variableCode;
+    }
+
+    /**
+     * Decode the string at offset, which ends at a terminator or after maxLength bytes.
+     * In text engine mode, it also ends after a \r or \e entry.
+     */
+    public String decode(byte[] data, int offset, int maxLength, boolean textEngineMode) {
+        // Measure first so that the chars can be put straight into an array of the right size
+        char[] chars = new char[decode(data, offset, maxLength, textEngineMode, null)];
+        decode(data, offset, maxLength, textEngineMode, chars);
+        return new String(chars);
+    }
+
+    /**
+     * Decode count strings, each starting stride bytes after the last, into out starting at outOffset.
+     */
+    public void decode(byte[] data, int offset, int stride, int maxLength, String[] out, int outOffset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[outOffset + i] = decode(data, offset + i * stride, maxLength, false);
+        }
+    }
+
+    // Writes the decoded chars to out, or only counts them if out is null
+    private int decode(byte[] data, int offset, int maxLength, boolean textEngineMode, char[] out) {
+        int length = 0;
+        for (int c = 0; c < maxLength; c++) {
+            int currChar = data[offset + c] & 0xFF;
+            String text = table[currChar];
+            if (text == null) {
+                if (currChar == terminator) {
+                    break;
+                } else if (currChar == variableCode) {
+                    text = VARIABLE_ESCAPES[data[offset + c + 1] & 0xFF];
+                    c++;
+                } else {
+                    text = HEX_ESCAPES[currChar];
+                }
+            }
+            if (out != null) {
+                text.getChars(0, text.length(), out, length);
+            }
+            length += text.length();
+            if (textEngineMode && table[currChar] != null && (text.equals("\\r") || text.equals("\\e"))) {
+                break;
+            }
+        }
+        return length;
+    }
+}
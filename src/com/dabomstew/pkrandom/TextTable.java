@@ -0,0 +1,139 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  TextTable.java - a parsed character table (.tbl file).                --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A character table, read with a single buffered read and compiled into a decode array and an
+ * encode trie. Each table is only loaded once per run and then shared by every ROM handler
+ * that uses it, so none of the results must be modified.
+ */
+public class TextTable {
+
+    private static final Map<String, TextTable> loaded = new HashMap<>();
+
+    private final int[] codes;
+    private final String[] texts;
+    private final String[] decodeTable;
+    private final TextTrie encodeTrie;
+
+    private TextTable(int[] codes, String[] texts) {
+        this.codes = codes;
+        this.texts = texts;
+        int highestCode = 0xFF;
+        for (int code : codes) {
+            highestCode = Math.max(highestCode, code);
+        }
+        decodeTable = new String[highestCode + 1];
+        encodeTrie = new TextTrie();
+        // Later lines override earlier ones
+        for (int i = 0; i < codes.length; i++) {
+            decodeTable[codes[i]] = texts[i];
+            encodeTrie.put(texts[i], codes[i]);
+        }
+    }
+
+    /**
+     * @param filename The table's name in the config folder, including the .tbl extension
+     */
+    public static synchronized TextTable load(String filename) throws IOException {
+        TextTable table = loaded.get(filename);
+        if (table == null) {
+            table = parse(new String(FileFunctions.getConfigAsBytes(filename), StandardCharsets.UTF_8));
+            loaded.put(filename, table);
+        }
+        return table;
+    }
+
+    private static TextTable parse(String contents) {
+        int[] codes = new int[256];
+        String[] texts = new String[256];
+        int count = 0;
+        int pos = 0;
+        int length = contents.length();
+        while (pos < length) {
+            // Line breaks are the same ones Scanner.nextLine() recognises
+            int end = pos;
+            while (end < length && !isLineBreak(contents.charAt(end))) {
+                end++;
+            }
+            String line = contents.substring(pos, end);
+            pos = end + (end + 1 < length && contents.charAt(end) == '\r' && contents.charAt(end + 1) == '\n' ? 2 : 1);
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            int equals = line.indexOf('=');
+            if (count == codes.length) {
+                codes = Arrays.copyOf(codes, count * 2);
+                texts = Arrays.copyOf(texts, count * 2);
+            }
+            codes[count] = Integer.parseInt(line.substring(0, equals), 16);
+            texts[count] = line.substring(equals + 1);
+            count++;
+        }
+        return new TextTable(Arrays.copyOf(codes, count), Arrays.copyOf(texts, count));
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
+    }
+
+    /**
+     * @return How many lines the table has
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * @return The code on the given line of the table
+     */
+    public int getCode(int line) {
+        return codes[line];
+    }
+
+    /**
+     * @return The text on the given line of the table
+     */
+    public String getText(int line) {
+        return texts[line];
+    }
+
+    /**
+     * @return The text of each code, or null where there is none. It always covers at least
+     *         every byte value.
+     */
+    public String[] getDecodeTable() {
+        return decodeTable;
+    }
+
+    public TextTrie getEncodeTrie() {
+        return encodeTrie;
+    }
+}
@@ -0,0 +1,118 @@
+package com.dabomstew.pkrandom;
+
+/*----------------------------------------------------------------------------*/
+/*--  TextTrie.java - looks up the entries of a character table while       --*/
+/*--                  encoding text.                                        --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  The custom code written here is licensed under the terms of the GPL:  --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.util.Arrays;
+
+/**
+ * The text side of a character table (.tbl file), stored as a trie so that the longest entry
+ * at any point in a string can be found in one walk, without cutting out substrings to look up.
+ */
+public class TextTrie {
+
+    private char[] labels = new char[0];
+    private TextTrie[] children = new TextTrie[0];
+    private int code = -1;
+
+    /**
+     * Map text to code, replacing any code text was already mapped to.
+     */
+    public void put(String text, int code) {
+        TextTrie node = this;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int idx = Arrays.binarySearch(node.labels, c);
+            if (idx < 0) {
+                idx = -idx - 1;
+                int n = node.labels.length;
+                char[] labels = new char[n + 1];
+                TextTrie[] children = new TextTrie[n + 1];
+                System.arraycopy(node.labels, 0, labels, 0, idx);
+                System.arraycopy(node.children, 0, children, 0, idx);
+                System.arraycopy(node.labels, idx, labels, idx + 1, n - idx);
+                System.arraycopy(node.children, idx, children, idx + 1, n - idx);
+                labels[idx] = c;
+                children[idx] = new TextTrie();
+                node.labels = labels;
+                node.children = children;
+            }
+            node = node.children[idx];
+        }
+        node.code = code;
+    }
+
+    /**
+     * @return The code text is mapped to, or -1 if there is none
+     */
+    public int get(String text) {
+        TextTrie node = find(text);
+        return node == null ? -1 : node.code;
+    }
+
+    public void remove(String text) {
+        TextTrie node = find(text);
+        if (node != null) {
+            node.code = -1;
+        }
+    }
+
+    private TextTrie find(String text) {
+        TextTrie node = this;
+        for (int i = 0; i < text.length() && node != null; i++) {
+            int idx = Arrays.binarySearch(node.labels, text.charAt(i));
+            node = idx >= 0 ? node.children[idx] : null;
+        }
+        return node;
+    }
+
+    /**
+     * Find the longest entry of at most maxLength chars that text has at offset.
+     *
+     * @return The entry's code in the low 16 bits and its length above them,
+     *         or -1 if no entry matches
+     */
+    public int match(CharSequence text, int offset, int maxLength) {
+        TextTrie node = this;
+        int result = -1;
+        int end = maxLength < text.length() - offset ? offset + maxLength : text.length();
+        for (int i = offset; i < end; i++) {
+            int idx = Arrays.binarySearch(node.labels, text.charAt(i));
+            if (idx < 0) {
+                break;
+            }
+            node = node.children[idx];
+            if (node.code >= 0) {
+                result = ((i + 1 - offset) << 16) | (node.code & 0xFFFF);
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        labels = new char[0];
+        children = new TextTrie[0];
+        code = -1;
+    }
+}
@@ -35,6 +35,11 @@ public class N3DSConstants {
     private static final Map<Integer,String> textVariableCodesORAS = setupTextVariableCodes(Type_ORAS);
     private static final Map<Integer,String> textVariableCodesSM = setupTextVariableCodes(Type_SM);
 
+    // Reverse lookups for encoding text; where a name appears twice, the first code found by iteration wins
+    private static final Map<String,Integer> variableCodesXY = invert(textVariableCodesXY);
+    private static final Map<String,Integer> variableCodesORAS = invert(textVariableCodesORAS);
+    private static final Map<String,Integer> variableCodesSM = invert(textVariableCodesSM);
+
     public static Map<Integer,String> getTextVariableCodes(int romType) {
         if (romType == Type_XY) {
             return textVariableCodesXY;
@@ -200,13 +205,25 @@ public class N3DSConstants {
         return map;
     }
 
+    private static Map<String,Integer> invert(Map<Integer,String> map) {
+        Map<String,Integer> inverse = new HashMap<>();
+        for (Map.Entry<Integer,String> entry: map.entrySet()) {
+            inverse.putIfAbsent(entry.getValue(), entry.getKey());
+        }
+        return inverse;
+    }
+
     public static int getVariableCode(String name, int romType) {
-        Map<Integer,String> map = getTextVariableCodes(romType);
-        for (int k: map.keySet()) {
-            if (map.get(k).equals(name)) {
-                return k;
-            }
+        Map<String,Integer> map;
+        if (romType == Type_XY) {
+            map = variableCodesXY;
+        } else if (romType == Type_ORAS) {
+            map = variableCodesORAS;
+        } else if (romType == Type_SM || romType == Type_USUM) {
+            map = variableCodesSM;
+        } else {
+            return 0;
         }
-        return 0;
+        return map.getOrDefault(name, 0);
     }
 }
@@ -25,13 +25,8 @@ package com.dabomstew.pkrandom.ctr;
 import com.dabomstew.pkrandom.FileFunctions;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 public class AMX {
 
@@ -57,6 +52,9 @@ public class AMX {
 
     private byte[] extraData;
 
+    // The script as it was read, kept so that getBytes can hand it back as-is if decData hasn't changed
+    private byte[] encData;
+
     public AMX(byte[] data, int scriptNum) throws IOException {
         int found = 0;
         for (int i = 0; i < data.length - 3; i++) {
@@ -95,17 +93,17 @@ public class AMX {
         allocatedMemory = FileFunctions.readFullInt(encData,0x18);
 
         compLength = length - scriptInstrStart;
-        byte[] compressedBytes = Arrays.copyOfRange(encData,scriptInstrStart,length);
         decompLength = finalOffset - scriptInstrStart;
 
-        decData = decompressBytes(compressedBytes, decompLength);
+        decData = decompressBytes(encData, scriptInstrStart, decompLength);
         extraData = Arrays.copyOfRange(encData,0x1C,scriptInstrStart);
+        this.encData = encData;
     }
 
     // Credit to FireyFly
-    private byte[] decompressBytes(byte[] data, int length) {
+    private byte[] decompressBytes(byte[] data, int offset, int length) {
         byte[] code = new byte[length];
-        int i = 0, j = 0, x = 0, f = 0;
+        int i = 0, j = 0, x = 0, f = offset;
         while (i < code.length) {
             int b = data[f++];
             int v = b & 0x7F;
@@ -115,113 +113,100 @@ public class AMX {
                 x = (x << 7) | (v & 0xFF);
             }
             if ((b & 0x80) != 0) continue;
-            code[i++] = (byte)(x & 0xFF);
-            code[i++] = (byte)((x >>> 8) & 0xFF);
-            code[i++] = (byte)((x >>> 16) & 0xFF);
-            code[i++] = (byte)((x >>> 24) & 0xFF);
+            FileFunctions.writeFullInt(code, i, x);
+            i += 4;
             j = 0;
         }
         return code;
     }
 
     public byte[] getBytes() {
-
-        ByteBuffer bbuf = ByteBuffer.allocate(length*2);
-
-        bbuf.order(ByteOrder.LITTLE_ENDIAN);
-
-        bbuf.putInt(length);
-        bbuf.putInt(amxMagic);
-        bbuf.putShort((short)ptrOffset);
-        bbuf.putShort((short)ptrCount);
-        bbuf.putInt(scriptInstrStart);
-        bbuf.putInt(scriptMovementStart);
-        bbuf.putInt(finalOffset);
-        bbuf.putInt(allocatedMemory);
-        bbuf.put(extraData);
-        bbuf.put(compressScript(decData));
-        bbuf.flip();
-        bbuf.putInt(bbuf.limit());
-
-        return Arrays.copyOfRange(bbuf.array(),0,bbuf.limit());
-    }
-
-    private byte[] compressScript(byte[] data) {
-        if (data == null || data.length % 4 != 0) {
-            return null;
+        if (decData == null || decData.length % 4 != 0) {
+            throw new RandomizerIOException("AMX script data must be a whole number of instructions");
+        }
+        if (decData.length == decompLength && matchesOriginal()) {
+            return Arrays.copyOf(encData, length);
         }
-        ByteBuffer inBuf = ByteBuffer.wrap(data);
-        inBuf.order(ByteOrder.LITTLE_ENDIAN);
-
-        ByteArrayOutputStream out = new ByteArrayOutputStream(compLength);
 
-        try {
-            while (inBuf.position() < data.length) {
-                compressBytes(inBuf, out);
-            }
-        } catch (IOException e) {
-            throw new RandomizerIOException(e);
+        int compressedLength = 0;
+        for (int i = 0; i < decData.length; i += 4) {
+            compressedLength += compressedInstructionLength(FileFunctions.readFullInt(decData, i));
         }
 
-        return out.toByteArray();
+        int headerLength = 0x1C + extraData.length;
+        byte[] out = new byte[headerLength + compressedLength];
+        FileFunctions.writeFullInt(out, 0, out.length);
+        FileFunctions.writeFullInt(out, 4, amxMagic);
+        FileFunctions.write2ByteInt(out, 8, ptrOffset);
+        FileFunctions.write2ByteInt(out, 0xA, ptrCount);
+        FileFunctions.writeFullInt(out, 0xC, scriptInstrStart);
+        FileFunctions.writeFullInt(out, 0x10, scriptMovementStart);
+        FileFunctions.writeFullInt(out, 0x14, finalOffset);
+        FileFunctions.writeFullInt(out, 0x18, allocatedMemory);
+        System.arraycopy(extraData, 0, out, 0x1C, extraData.length);
+
+        int pos = headerLength;
+        for (int i = 0; i < decData.length; i += 4) {
+            pos = compressInstruction(FileFunctions.readFullInt(decData, i), out, pos);
+        }
+        return out;
     }
 
-    // Modified version of the AMX script compression algorithm from pkNX
-    private void compressBytes(ByteBuffer inBuf, ByteArrayOutputStream out) throws IOException {
-        List<Byte> bytes = new ArrayList<>();
-        int instructionTemp = inBuf.getInt(inBuf.position());
-        long instruction = Integer.toUnsignedLong(instructionTemp);
-        boolean sign = (instruction & 0x80000000) > 0;
-
-        // Signed (negative) values are handled opposite of unsigned (positive) values.
-        // Positive values are "done" when we've shifted the value down to zero, but
-        // we don't need to store the highest 1s in a signed value. We handle this by
-        // tracking the loop via a NOTed shadow copy of the instruction if it's signed.
-        int shadowTemp = sign ? ~instructionTemp : instructionTemp;
-        long shadow = Integer.toUnsignedLong(shadowTemp);
-        do
-        {
-            long least7 = instruction & 0b01111111;
-            byte byteVal = (byte)least7;
-
-            if (bytes.size() > 0)
-            {
-                // Continuation bit on all but the lowest byte
-                byteVal |= 0x80;
+    // Decodes the original script again one instruction at a time, without keeping a copy,
+    // and checks it against the current contents of decData
+    private boolean matchesOriginal() {
+        int i = 0, j = 0, x = 0, f = scriptInstrStart;
+        while (i < decData.length) {
+            int b = encData[f++];
+            int v = b & 0x7F;
+            if (++j == 1) {
+                x = ((((v >>> 6 == 0 ? 1 : 0) - 1 ) << 6) | v);
+            } else {
+                x = (x << 7) | (v & 0xFF);
             }
-
-            bytes.add(byteVal);
-
-            instruction >>= 7;
-            shadow >>= 7;
+            if ((b & 0x80) != 0) continue;
+            if (FileFunctions.readFullInt(decData, i) != x) {
+                return false;
+            }
+            i += 4;
+            j = 0;
         }
-        while (shadow != 0);
+        return true;
+    }
 
-        if (bytes.size() < 5)
-        {
-            // Ensure "sign bit" (bit just to the right of highest continuation bit) is
-            // correct. Add an extra empty continuation byte if we need to. Values can't
-            // be longer than 5 bytes, though.
+    // The AMX script compression algorithm from pkNX stores each instruction as big-endian groups
+    // of 7 bits, with the continuation bit set on all but the last group. Negative values are
+    // handled opposite of positive values: positive values are "done" when we've shifted the value
+    // down to zero, but we don't need to store the highest 1s in a negative value. Either way,
+    // bit 6 of the first group has to match the sign, so add an extra group if it doesn't.
+    // Values can't be longer than 5 groups, though.
+    private static int significantGroups(int instruction) {
+        int shadow = instruction < 0 ? ~instruction : instruction;
+        int groups = 1;
+        while ((shadow >>>= 7) != 0) {
+            groups++;
+        }
+        return groups;
+    }
 
-            int signBit = sign ? 0x40 : 0x00;
+    private static boolean needsSignGroup(int instruction, int groups) {
+        return groups < 5 && ((instruction >>> (7 * groups - 1)) & 1) != (instruction >>> 31);
+    }
 
-            if ((bytes.get(bytes.size() - 1) & 0x40) != signBit)
-                bytes.add((byte)(sign ? 0xFF : 0x80));
-        }
+    private static int compressedInstructionLength(int instruction) {
+        int groups = significantGroups(instruction);
+        return needsSignGroup(instruction, groups) ? groups + 1 : groups;
+    }
 
-        // Reverse for endianess
-        for (int i = 0; i < bytes.size() / 2; i++) {
-            byte temp = bytes.get(i);
-            bytes.set(i, bytes.get(bytes.size() - i - 1));
-            bytes.set(bytes.size() - i - 1,  temp);
+    private static int compressInstruction(int instruction, byte[] out, int pos) {
+        int groups = significantGroups(instruction);
+        if (needsSignGroup(instruction, groups)) {
+            out[pos++] = (byte) (instruction < 0 ? 0xFF : 0x80);
         }
-
-        byte[] ret = new byte[bytes.size()];
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] = bytes.get(i);
+        for (int k = groups - 1; k > 0; k--) {
+            out[pos++] = (byte) (((instruction >>> (7 * k)) & 0x7F) | 0x80);
         }
-
-        inBuf.position(inBuf.position() + 4);
-        out.write(ret);
+        out[pos++] = (byte) (instruction & 0x7F);
+        return pos;
     }
 }
@@ -22,14 +22,13 @@ package com.dabomstew.pkrandom.ctr;
 /*----------------------------------------------------------------------------*/
 
 import cuecompressors.BLZCoder;
+import cuecompressors.CompressionCache;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class GARCArchive {
 
@@ -48,6 +47,13 @@ public class GARCArchive {
     private Map<Integer,Boolean> isCompressed = new TreeMap<>();
     private List<Boolean> compressThese = null;
 
+    // For compressed entries, the compressed bytes as read from the ROM plus a copy of what they decompressed to.
+    // If an entry is not marked dirty and its contents still match the snapshot, getBytes() writes the original
+    // compressed bytes back out instead of recompressing them.
+    private Map<Integer,Map<Integer,byte[]>> originalCompressed = new TreeMap<>();
+    private Map<Integer,Map<Integer,byte[]>> decompressedSnapshot = new TreeMap<>();
+    private Set<Integer> dirtyEntries = new HashSet<>();
+
     private GARCFrame garc;
     private FATOFrame fato;
     private FATBFrame fatb;
@@ -180,8 +186,11 @@ public class GARCArchive {
                 bbuf.get(file);
                 if (compressed) {
                     try {
-                        files.put(k,new BLZCoder(null).BLZ_DecodePub(file,"GARC"));
+                        byte[] decompressed = BLZCoder.decodeLZ11(file);
+                        files.put(k,decompressed);
                         isCompressed.put(i,true);
+                        originalCompressed.computeIfAbsent(i, x -> new TreeMap<>()).put(k,file);
+                        decompressedSnapshot.computeIfAbsent(i, x -> new TreeMap<>()).put(k,decompressed.clone());
                     } catch (Exception e) {
                         e.printStackTrace();
                         return false;
@@ -198,52 +207,61 @@ public class GARCArchive {
 
     public void updateFiles(List<Map<Integer,byte[]>> files) {
         fimb.files = files;
+        for (int i = 0; i < files.size(); i++) {
+            dirtyEntries.add(i);
+        }
+    }
+
+    /**
+     * Marks an entry as modified, so that it will be recompressed on the next call to getBytes().
+     * Entries whose contents were edited in place are detected anyway; this just skips the comparison.
+     */
+    public void markDirty(int index) {
+        dirtyEntries.add(index);
+    }
+
+    public boolean isDirty(int index) {
+        if (dirtyEntries.contains(index)) {
+            return true;
+        }
+        Map<Integer,byte[]> snapshot = decompressedSnapshot.get(index);
+        if (snapshot == null) {
+            // Uncompressed entries are written out as-is, so there is nothing to save by tracking them
+            return true;
+        }
+        Map<Integer,byte[]> directory = fimb.files.get(index);
+        if (!directory.keySet().equals(snapshot.keySet())) {
+            return true;
+        }
+        for (int k: directory.keySet()) {
+            if (!Arrays.equals(directory.get(k), snapshot.get(k))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public byte[] getBytes() throws IOException {
         int garcHeaderSize = garc.version == VER_4 ? garcHeaderSize_4 : garcHeaderSize_6;
-        ByteBuffer garcBuf = ByteBuffer.allocate(garcHeaderSize);
-        garcBuf.order(ByteOrder.LITTLE_ENDIAN);
-        garcBuf.put(garcMagic.getBytes());
-        garcBuf.putInt(garcHeaderSize);
-        garcBuf.putShort((short)0xFEFF);
-        garcBuf.putShort(version == 4 ? (short)VER_4 : (short)VER_6);
-        garcBuf.putInt(4);
-
-        ByteBuffer fatoBuf = ByteBuffer.allocate(fato.headerSize);
-        fatoBuf.order(ByteOrder.LITTLE_ENDIAN);
-        fatoBuf.put(fatoMagic.getBytes());
-        fatoBuf.putInt(fato.headerSize);
-        fatoBuf.putShort((short)fato.entryCount);
-        fatoBuf.putShort((short)fato.padding);
-
-        ByteBuffer fatbBuf = ByteBuffer.allocate(fatb.headerSize);
-        fatbBuf.order(ByteOrder.LITTLE_ENDIAN);
-        fatbBuf.put(fatbMagic.getBytes());
-        fatbBuf.putInt(fatb.headerSize);
-        fatbBuf.putInt(fatb.fileCount);
-
-        ByteBuffer fimbHeaderBuf = ByteBuffer.allocate(fimb.headerSize);
-        fimbHeaderBuf.order(ByteOrder.LITTLE_ENDIAN);
-        fimbHeaderBuf.put(fimbMagic.getBytes());
-        fimbHeaderBuf.putInt(fimb.headerSize);
-
-        ByteArrayOutputStream fimbPayloadStream = new ByteArrayOutputStream(); // Unknown size, can't use ByteBuffer
-
-        int fimbOffset = 0;
+        int fileCount = fimb.files.size();
+
+        // First pass: work out the bytes each entry will be stored as, so the output can be sized exactly.
+        // Entries that need recompressing are independent of each other, so do those in parallel.
+        byte[][][] payloads = new byte[fileCount][][];
+        IntStream.range(0, fileCount).parallel().forEach(i -> payloads[i] = getEntryPayload(i));
+        int[] totalLengths = new int[fileCount];
+        int[] paddings = new int[fileCount];
+        int[] bitVectors = new int[fileCount];
+        int payloadSize = 0;
         int largestSize = 0;
         int largestPadded = 0;
-        for (int i = 0; i < fimb.files.size(); i++) {
-            Map<Integer,byte[]> directory = fimb.files.get(i);
+        for (int i = 0; i < fileCount; i++) {
             int bitVector = 0;
-            int totalLength = 0;
-            for (int k: directory.keySet()) {
+            for (int k: fimb.files.get(i).keySet()) {
                 bitVector |= (1 << k);
-                byte[] file = directory.get(k);
-                if (isCompressed.get(i)) {
-                    file = new BLZCoder(null).BLZ_EncodePub(file,false,false,"GARC");
-                }
-                fimbPayloadStream.write(file);
+            }
+            int totalLength = 0;
+            for (byte[] file: payloads[i]) {
                 totalLength += file.length;
             }
 
@@ -259,71 +277,95 @@ public class GARCArchive {
                 largestPadded = totalLength + paddingRequired;
             }
 
-            for (int j = 0; j < paddingRequired; j++) {
-                fimbPayloadStream.write(fato.padding & 0xFF);
-            }
+            totalLengths[i] = totalLength;
+            paddings[i] = paddingRequired;
+            bitVectors[i] = bitVector;
+            payloadSize += totalLength + paddingRequired;
+        }
 
-            fatoBuf.putInt(fatbBuf.position() - 12);
+        int fatoSize = 12 + 4 * fileCount;
+        int fatbSize = 12 + 16 * fileCount;
+        int dataOffset = garcHeaderSize + fatoSize + fatbSize + fimb.headerSize;
 
-            fatbBuf.putInt(bitVector);
-            fatbBuf.putInt(fimbOffset);
-            fimbOffset = fimbPayloadStream.size();
-            fatbBuf.putInt(fimbOffset);
-            fatbBuf.putInt(totalLength);
-        }
+        // Second pass: serialise everything into a single buffer
+        ByteBuffer buf = ByteBuffer.allocate(dataOffset + payloadSize);
+        buf.order(ByteOrder.LITTLE_ENDIAN);
 
-        int dataOffset = garcHeaderSize + fatoBuf.position() + fatbBuf.position() + fimb.headerSize;
-        garcBuf.putInt(dataOffset);
-        garcBuf.putInt(dataOffset + fimbOffset);
+        // GARC
+        buf.put(garcMagic.getBytes());
+        buf.putInt(garcHeaderSize);
+        buf.putShort((short)0xFEFF);
+        buf.putShort(version == 4 ? (short)VER_4 : (short)VER_6);
+        buf.putInt(4);
+        buf.putInt(dataOffset);
+        buf.putInt(dataOffset + payloadSize);
         if (garc.version == VER_4) {
-            garcBuf.putInt(largestSize);
+            buf.putInt(largestSize);
         } else if (garc.version == VER_6) {
-            garcBuf.putInt(largestPadded);
-            garcBuf.putInt(largestSize);
-            garcBuf.putInt(garc.contentPadToNearest);
+            buf.putInt(largestPadded);
+            buf.putInt(largestSize);
+            buf.putInt(garc.contentPadToNearest);
+        }
+
+        // FATO
+        buf.put(fatoMagic.getBytes());
+        buf.putInt(fato.headerSize);
+        buf.putShort((short)fato.entryCount);
+        buf.putShort((short)fato.padding);
+        for (int i = 0; i < fileCount; i++) {
+            buf.putInt(16 * i);
+        }
+
+        // FATB
+        buf.put(fatbMagic.getBytes());
+        buf.putInt(fatb.headerSize);
+        buf.putInt(fatb.fileCount);
+        int fimbOffset = 0;
+        for (int i = 0; i < fileCount; i++) {
+            buf.putInt(bitVectors[i]);
+            buf.putInt(fimbOffset);
+            fimbOffset += totalLengths[i] + paddings[i];
+            buf.putInt(fimbOffset);
+            buf.putInt(totalLengths[i]);
         }
-        fimbHeaderBuf.putInt(fimbPayloadStream.size());
-
-        garcBuf.flip();
-        fatoBuf.flip();
-        fatbBuf.flip();
-        fimbHeaderBuf.flip();
-
-        byte[] fullArray = new byte[garcBuf.limit() + fatoBuf.limit() + fatbBuf.limit() + fimbHeaderBuf.limit() + fimbPayloadStream.size()];
-        System.arraycopy(garcBuf.array(),
-                0,
-                fullArray,
-                0,
-                garcBuf.limit());
-        System.arraycopy(fatoBuf.array(),
-                0,
-                fullArray,
-                garcBuf.limit(),
-                fatoBuf.limit());
-        System.arraycopy(fatbBuf.array(),
-                0,
-                fullArray,
-                garcBuf.limit()+fatoBuf.limit(),
-                fatbBuf.limit());
-        System.arraycopy(fimbHeaderBuf.array(),
-                0,
-                fullArray,
-                garcBuf.limit()+fatoBuf.limit()+fatbBuf.limit(),
-                fimbHeaderBuf.limit());
-//        garcBuf.get(fullArray);
-//        fatoBuf.get(fullArray,garcBuf.limit(),fatoBuf.limit());
-//        fatbBuf.get(fullArray,garcBuf.limit()+fatoBuf.limit(),fatbBuf.limit());
-//        fimbHeaderBuf.get(fullArray,garcBuf.limit()+fatoBuf.limit()+fatbBuf.limit(),fimbHeaderBuf.limit());
-        System.arraycopy(fimbPayloadStream.toByteArray(),
-                0,
-                fullArray,
-                garcBuf.limit()+fatoBuf.limit()+fatbBuf.limit()+fimbHeaderBuf.limit(),
-                fimbPayloadStream.size());
-        return fullArray;
+
+        // FIMB
+        buf.put(fimbMagic.getBytes());
+        buf.putInt(fimb.headerSize);
+        buf.putInt(payloadSize);
+        buf.position(dataOffset);
+        byte paddingByte = (byte)(fato.padding & 0xFF);
+        for (int i = 0; i < fileCount; i++) {
+            for (byte[] file: payloads[i]) {
+                buf.put(file);
+            }
+            for (int j = 0; j < paddings[i]; j++) {
+                buf.put(paddingByte);
+            }
+        }
+        return buf.array();
     }
 
 
 
+    private byte[][] getEntryPayload(int index) {
+        Map<Integer,byte[]> directory = fimb.files.get(index);
+        boolean compressed = isCompressed.getOrDefault(index, false);
+        boolean reuseOriginal = compressed && !isDirty(index);
+        byte[][] payload = new byte[directory.size()][];
+        int sub = 0;
+        for (int k: directory.keySet()) {
+            byte[] file = directory.get(k);
+            if (reuseOriginal) {
+                file = originalCompressed.get(index).get(k);
+            } else if (compressed) {
+                file = CompressionCache.encodeLZ11(file);
+            }
+            payload[sub++] = file;
+        }
+        return payload;
+    }
+
     public byte[] getFile(int index) {
         return fimb.files.get(index).get(0);
     }
@@ -334,6 +376,7 @@ public class GARCArchive {
 
     public void setFile(int index, byte[] data) {
         fimb.files.get(index).put(0,data);
+        dirtyEntries.add(index);
     }
 
     public Map<Integer,byte[]> getDirectory(int index) {
@@ -27,13 +27,19 @@ import com.dabomstew.pkrandom.exceptions.CannotWriteToLocationException;
 import com.dabomstew.pkrandom.exceptions.EncryptedROMException;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import cuecompressors.BLZCoder;
+import cuecompressors.CompressionCache;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class NCCH {
     private String romFilename;
@@ -348,7 +354,7 @@ public class NCCH {
         System.out.println("NCCH: Rebuilding exefs...");
         byte[] code = getCode();
         if (codeCompressed) {
-            code = new BLZCoder(null).BLZ_EncodePub(code, false, true, ".code");
+            code = CompressionCache.encodeBLZ(code, false, true);
         }
 
         // Create a new ExefsFileHeader for our updated .code
@@ -582,31 +588,78 @@ public class NCCH {
     }
 
     public void saveAsLayeredFS(String outputPath) throws IOException {
-        String layeredFSRootPath = outputPath + File.separator + titleId + File.separator;
-        File layeredFSRootDir = new File(layeredFSRootPath);
+        saveAsLayeredFS(outputPath, false);
+    }
+
+    /**
+     * Writes the changed code and romfs files as a LayeredFS directory for this title.
+     * In incremental mode, an existing output directory is reused: files whose contents are
+     * already correct are left alone, files that are no longer part of the output are removed,
+     * and everything else is (re)written in parallel. Otherwise, the directory is purged first.
+     * Both modes leave the same files behind.
+     */
+    public void saveAsLayeredFS(String outputPath, boolean incremental) throws IOException {
+        Path layeredFSRoot = Paths.get(outputPath, titleId);
+        File layeredFSRootDir = layeredFSRoot.toFile();
         if (!layeredFSRootDir.exists()) {
             layeredFSRootDir.mkdirs();
-        } else {
+        } else if (!incremental) {
             purgeDirectory(layeredFSRootDir);
         }
-        String romfsRootPath = layeredFSRootPath + "romfs" + File.separator;
-        File romfsDir = new File(romfsRootPath);
-        if (!romfsDir.exists()) {
-            romfsDir.mkdirs();
+        Path romfsRoot = layeredFSRoot.resolve("romfs");
+
+        Map<Path, RomfsFile> outputFiles = new HashMap<>();
+        for (RomfsFile file : romfsFiles.values()) {
+            if (file.fileChanged) {
+                outputFiles.put(romfsRoot.resolve(file.fullPath).normalize(), file);
+            }
+        }
+        Path codePath = layeredFSRoot.resolve("code.bin");
+
+        if (incremental) {
+            Set<Path> expectedFiles = new HashSet<>(outputFiles.keySet());
+            if (codeChanged) {
+                expectedFiles.add(codePath);
+            }
+            removeStaleFiles(layeredFSRootDir, expectedFiles);
+        }
+
+        // Create every directory up front, so the writes below don't race on mkdirs
+        romfsRoot.toFile().mkdirs();
+        Set<Path> directories = new HashSet<>();
+        for (Path path : outputFiles.keySet()) {
+            directories.add(path.getParent());
+        }
+        for (Path directory : directories) {
+            Files.createDirectories(directory);
         }
 
         if (codeChanged) {
-            byte[] code = getCode();
-            FileOutputStream fos = new FileOutputStream(new File(layeredFSRootPath + "code.bin"));
-            fos.write(code);
-            fos.close();
+            writeLayeredFSFile(codePath, getCode());
         }
 
-        for (Map.Entry<String, RomfsFile> entry : romfsFiles.entrySet()) {
-            RomfsFile file = entry.getValue();
-            if (file.fileChanged) {
-                writeRomfsFileToLayeredFS(file, romfsRootPath);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Void>> writes = new ArrayList<>();
+            for (Map.Entry<Path, RomfsFile> entry : outputFiles.entrySet()) {
+                writes.add(executor.submit(() -> {
+                    writeLayeredFSFile(entry.getKey(), entry.getValue().getOverrideContents());
+                    return null;
+                }));
+            }
+            for (Future<Void> write : writes) {
+                write.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
     }
 
@@ -619,22 +672,33 @@ public class NCCH {
         }
     }
 
-    private void writeRomfsFileToLayeredFS(RomfsFile file, String layeredFSRootPath) throws IOException {
-        String[] romfsPathComponents = file.fullPath.split("/");
-        StringBuffer buffer = new StringBuffer(layeredFSRootPath);
-        for (int i = 0; i < romfsPathComponents.length - 1; i++) {
-            buffer.append(romfsPathComponents[i]);
-            buffer.append(File.separator);
-            File currentDir = new File(buffer.toString());
-            if (!currentDir.exists()) {
-                currentDir.mkdirs();
+    // Deletes everything under directory that isn't in expectedFiles, along with any directories left empty.
+    // Returns whether the directory itself is now empty.
+    private boolean removeStaleFiles(File directory, Set<Path> expectedFiles) {
+        boolean empty = true;
+        for (File file : directory.listFiles()) {
+            if (file.isDirectory()) {
+                if (removeStaleFiles(file, expectedFiles)) {
+                    file.delete();
+                } else {
+                    empty = false;
+                }
+            } else if (expectedFiles.contains(file.toPath().normalize())) {
+                empty = false;
+            } else {
+                file.delete();
             }
         }
-        buffer.append(romfsPathComponents[romfsPathComponents.length - 1]);
-        String romfsFilePath = buffer.toString();
-        FileOutputStream fos = new FileOutputStream(new File(romfsFilePath));
-        fos.write(file.getOverrideContents());
-        fos.close();
+        return empty;
+    }
+
+    // Only touches the file on disk if its contents actually differ from what we want to write.
+    private void writeLayeredFSFile(Path path, byte[] contents) throws IOException {
+        if (Files.isRegularFile(path) && Files.size(path) == contents.length
+                && Arrays.equals(Files.readAllBytes(path), contents)) {
+            return;
+        }
+        Files.write(path, contents);
     }
 
     public boolean isDecrypted() throws IOException {
@@ -672,7 +736,7 @@ public class NCCH {
             originalCodeCRC = FileFunctions.getCRC32(code);
 
             if (codeCompressed) {
-                code = new BLZCoder(null).BLZ_DecodePub(code, ".code");
+                code = BLZCoder.decodeBLZ(code);
             }
 
             // Now actually make the copy or w/e
@@ -727,6 +791,10 @@ public class NCCH {
         return romfsFiles.containsKey(filename);
     }
 
+    public Set<String> getFilenames() {
+        return Collections.unmodifiableSet(romfsFiles.keySet());
+    }
+
     // returns null if file doesn't exist
     public byte[] getFile(String filename) throws IOException {
         if (romfsFiles.containsKey(filename)) {
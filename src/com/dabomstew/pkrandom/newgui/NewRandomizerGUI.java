@@ -36,6 +36,7 @@ import com.dabomstew.pkrandom.pokemon.ExpCurve;
 import com.dabomstew.pkrandom.pokemon.GenRestrictions;
 import com.dabomstew.pkrandom.pokemon.Pokemon;
 import com.dabomstew.pkrandom.romhandlers.*;
+import cuecompressors.CompressionCache;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
@@ -796,6 +797,8 @@ public class NewRandomizerGUI {
                         boolean romLoaded = false;
                         SwingUtilities.invokeLater(() -> opDialog.setVisible(true));
                         try {
+                            // Nothing compressed for the previous ROM will come up again
+                            CompressionCache.clear();
                             this.romHandler.loadRom(fh.getAbsolutePath());
                             if (gameUpdates.containsKey(this.romHandler.getROMCode())) {
                                 this.romHandler.loadGameUpdate(gameUpdates.get(this.romHandler.getROMCode()));
@@ -924,6 +927,7 @@ public class NewRandomizerGUI {
                         attemptWriteConfig();
                     }
                     SwingUtilities.invokeLater(() -> batchProgressDialog.setVisible(false));
+                    CompressionCache.clear();
                     JOptionPane.showMessageDialog(frame, bundle.getString("GUI.randomizationDone"));
                     if (unloadGameOnSuccess) {
                         romHandler = null;
@@ -1158,6 +1162,8 @@ public class NewRandomizerGUI {
     }
 
     private void presetLoader() {
+        // The dialog loads a ROM of its own
+        CompressionCache.clear();
         PresetLoadDialog pld = new PresetLoadDialog(this,frame);
         if (pld.isCompleted()) {
             // Apply it
@@ -12,6 +12,7 @@ import com.dabomstew.pkrandom.RomFunctions;
 import com.dabomstew.pkrandom.exceptions.CannotWriteToLocationException;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import cuecompressors.BLZCoder;
+import cuecompressors.CompressionCache;
 
 /*----------------------------------------------------------------------------*/
 /*--  NDSRom.java - base class for opening/saving ROMs                      --*/
@@ -245,7 +246,7 @@ public class NDSRom {
             // custom arm9
             byte[] newARM9 = getARM9();
             if (arm9_compressed) {
-                newARM9 = new BLZCoder(null).BLZ_EncodePub(newARM9, true, false, "arm9.bin");
+                newARM9 = CompressionCache.encodeBLZ(newARM9, true, false);
                 if (arm9_szoffset > 0) {
                     int newValue = newARM9.length + arm9_ramoffset;
                     writeToByteArr(newARM9, arm9_szoffset, 4, newValue);
@@ -536,7 +537,7 @@ public class NDSRom {
             }
 
             if (arm9_compressed) {
-                arm9 = new BLZCoder(null).BLZ_DecodePub(arm9, "arm9.bin");
+                arm9 = BLZCoder.decodeBLZ(arm9);
             }
 
             // Now actually make the copy or w/e
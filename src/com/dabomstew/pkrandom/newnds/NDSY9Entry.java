@@ -8,6 +8,7 @@ import java.io.RandomAccessFile;
 import com.dabomstew.pkrandom.FileFunctions;
 
 import cuecompressors.BLZCoder;
+import cuecompressors.CompressionCache;
 
 /*----------------------------------------------------------------------------*/
 /*--  NDSY9Entry.java - an entry in the arm9 overlay system                 --*/
@@ -62,7 +63,7 @@ public class NDSY9Entry {
             originalCRC = FileFunctions.getCRC32(buf);
             // Compression?
             if (compress_flag != 0 && this.original_size == this.compressed_size && this.compressed_size != 0) {
-                buf = new BLZCoder(null).BLZ_DecodePub(buf, "overlay " + overlay_id);
+                buf = BLZCoder.decodeBLZ(buf);
                 decompressed_data = true;
             }
             if (parent.isWritingEnabled()) {
@@ -126,7 +127,7 @@ public class NDSY9Entry {
         }
         byte[] buf = getContents();
         if (this.decompressed_data) {
-            buf = new BLZCoder(null).BLZ_EncodePub(buf, false, false, "overlay " + overlay_id);
+            buf = CompressionCache.encodeBLZ(buf, false, false);
             // update our compressed size
             this.compressed_size = buf.length;
         }
@@ -31,13 +31,21 @@ import com.dabomstew.pkrandom.exceptions.CannotWriteToLocationException;
 import com.dabomstew.pkrandom.exceptions.EncryptedROMException;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import com.dabomstew.pkrandom.pokemon.Type;
+import pptxt.N3DSTxtHandler;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
 
 public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 
@@ -45,6 +53,16 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
     private NCCH gameUpdate;
     private String loadedFN;
 
+    // Which of the base ROM and the game update each romfs path is actually read from, resolved on first use
+    private Map<String, NCCH> fileSources = new HashMap<>();
+
+    // Parsed GARCs keyed by romfs path, so that each one is only read and parsed once.
+    // Writing a cached GARC just marks it dirty; it is serialised back into the ROM when saving.
+    private Map<String, CachedGARC> garcCache = new HashMap<>();
+
+    // Decoded text files keyed by GARC and file index. Edited files are only re-encoded when the ROM is saved.
+    private Map<GARCArchive, Map<Integer, CachedText>> textCache = new IdentityHashMap<>();
+
     public Abstract3DSRomHandler(Random random, PrintStream logStream) {
         super(random, logStream);
     }
@@ -66,6 +84,8 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
             throw new RandomizerIOException(e);
         }
         loadedFN = filename;
+        fileSources.clear();
+        clearCaches();
         this.loadedROM(productCode, titleId);
         return true;
     }
@@ -83,10 +103,16 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
 
     protected abstract String getGameAcronym();
 
+    // Set to true to reuse an existing LayeredFS output directory, rewriting only what changed,
+    // rather than emptying it first. Meant for setups that save to the same directory repeatedly.
+    private static final String INCREMENTAL_LAYERED_FS_PROPERTY = "upr.incrementalLayeredFS";
+
     @Override
     public boolean saveRomFile(String filename, long seed) {
         try {
             savingROM();
+            flushTextCache();
+            flushGARCCache();
             baseRom.saveAsNCCH(filename, getGameAcronym(), seed);
         } catch (IOException | NoSuchAlgorithmException e) {
             if (e.getMessage().contains("Access is denied")) {
@@ -102,7 +128,9 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
     public boolean saveRomDirectory(String filename) {
         try {
             savingROM();
-            baseRom.saveAsLayeredFS(filename);
+            flushTextCache();
+            flushGARCCache();
+            baseRom.saveAsLayeredFS(filename, Boolean.getBoolean(INCREMENTAL_LAYERED_FS_PROPERTY));
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
@@ -120,6 +148,10 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
     public boolean loadGameUpdate(String filename) {
         String productCode = getProductCodeFromFile(filename);
         String titleId = getTitleIdFromFile(filename);
+        Set<String> changedFiles = new HashSet<>();
+        if (gameUpdate != null) {
+            changedFiles.addAll(gameUpdate.getFilenames());
+        }
         try {
             gameUpdate = new NCCH(filename, productCode, titleId);
             if (!gameUpdate.isDecrypted()) {
@@ -132,14 +164,51 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
-        this.loadedROM(baseRom.getProductCode(), baseRom.getTitleId());
+        changedFiles.addAll(gameUpdate.getFilenames());
+        switchFileSources(changedFiles);
         return true;
     }
 
     @Override
     public void removeGameUpdate() {
+        if (gameUpdate == null) {
+            return;
+        }
+        Set<String> changedFiles = new HashSet<>(gameUpdate.getFilenames());
         gameUpdate = null;
-        this.loadedROM(baseRom.getProductCode(), baseRom.getTitleId());
+        switchFileSources(changedFiles);
+    }
+
+    private void switchFileSources(Set<String> changedFiles) {
+        fileSources.clear();
+        for (String location : changedFiles) {
+            CachedGARC cached = garcCache.remove(location);
+            if (cached != null) {
+                textCache.remove(cached.garc);
+            }
+        }
+        this.gameUpdateChanged(changedFiles);
+    }
+
+    /**
+     * Called after a game update has been attached or detached. The code and every romfs file in
+     * changedFiles may now come from a different source, so any data loaded from them must be reloaded.
+     * Anything loaded only from other files is still valid.
+     */
+    protected abstract void gameUpdateChanged(Set<String> changedFiles);
+
+    /**
+     * @return Where in the romfs the file the ROM entry lists under fileKey is
+     */
+    protected abstract String getRomFile(String fileKey);
+
+    protected boolean isAnyFileChanged(Set<String> changedFiles, String... fileKeys) {
+        for (String fileKey : fileKeys) {
+            if (changedFiles.contains(getRomFile(fileKey))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     protected abstract String getGameVersion();
@@ -177,22 +246,171 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
     }
 
     protected GARCArchive readGARC(String subpath, boolean skipDecompression) throws IOException {
-        return new GARCArchive(readFile(subpath),skipDecompression);
+        GARCArchive garc = getCachedGARC(subpath, skipDecompression);
+        if (garc == null) {
+            garc = new GARCArchive(readFile(subpath),skipDecompression);
+            garcCache.put(subpath, new CachedGARC(garc, skipDecompression));
+        }
+        return garc;
     }
 
     protected GARCArchive readGARC(String subpath, List<Boolean> compressThese) throws IOException {
-        return new GARCArchive(readFile(subpath),compressThese);
+        GARCArchive garc = getCachedGARC(subpath, compressThese);
+        if (garc == null) {
+            garc = new GARCArchive(readFile(subpath),compressThese);
+            garcCache.put(subpath, new CachedGARC(garc, compressThese));
+        }
+        return garc;
     }
 
     protected void writeGARC(String subpath, GARCArchive garc) throws IOException {
-        this.writeFile(subpath,garc.getBytes());
+        CachedGARC cached = garcCache.get(subpath);
+        if (cached == null || cached.garc != garc) {
+            // Not the instance we handed out, so there is nothing to defer the write to
+            flushTextCache(garc);
+            this.writeFile(subpath,garc.getBytes());
+            return;
+        }
+        cached.dirty = true;
     }
 
-    protected byte[] readFile(String location) throws IOException {
-        if (gameUpdate != null && gameUpdate.hasFile(location)) {
-            return gameUpdate.getFile(location);
+    private GARCArchive getCachedGARC(String subpath, Object decompressionMode) throws IOException {
+        CachedGARC cached = garcCache.get(subpath);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.decompressionMode.equals(decompressionMode)) {
+            return cached.garc;
+        }
+        // Parsed with different decompression settings; write back any pending changes and parse it again
+        flushGARC(subpath);
+        garcCache.remove(subpath);
+        return null;
+    }
+
+    private void flushGARC(String subpath) throws IOException {
+        CachedGARC cached = garcCache.get(subpath);
+        if (cached != null) {
+            flushTextCache(cached.garc);
+        }
+        if (cached != null && cached.dirty) {
+            writeFileToRoms(subpath, cached.garc.getBytes());
+            cached.dirty = false;
+        }
+    }
+
+    private void flushGARCCache() throws IOException {
+        for (String subpath : garcCache.keySet()) {
+            flushGARC(subpath);
+        }
+    }
+
+    private void clearCaches() {
+        garcCache.clear();
+        textCache.clear();
+    }
+
+    protected List<String> getStrings(GARCArchive textGARC, int index, int romType) {
+        Map<Integer, CachedText> textFiles = textCache.computeIfAbsent(textGARC, g -> new HashMap<>());
+        CachedText cached = textFiles.get(index);
+        if (cached != null && cached.dirty) {
+            // Hand back what the edited strings actually encode to, not what was passed in
+            flushText(textGARC, index, cached);
+            cached = null;
+        }
+        if (cached == null) {
+            byte[] rawFile = textGARC.files.get(index).get(0);
+            cached = new CachedText(N3DSTxtHandler.readTexts(rawFile, true, romType), romType);
+            textFiles.put(index, cached);
+        }
+        return new ArrayList<>(cached.strings);
+    }
+
+    protected void setStrings(GARCArchive textGARC, int index, List<String> strings, int romType) {
+        Map<Integer, CachedText> textFiles = textCache.computeIfAbsent(textGARC, g -> new HashMap<>());
+        CachedText cached = new CachedText(new ArrayList<>(strings), romType);
+        cached.dirty = true;
+        textFiles.put(index, cached);
+    }
+
+    private void flushText(GARCArchive textGARC, int index, CachedText cached) {
+        try {
+            byte[] oldRawFile = textGARC.files.get(index).get(0);
+            textGARC.setFile(index, N3DSTxtHandler.saveEntry(oldRawFile, cached.strings, true, cached.romType));
+            markGARCDirty(textGARC);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        textCache.get(textGARC).remove(index);
+    }
+
+    private void markGARCDirty(GARCArchive garc) {
+        for (CachedGARC cachedGARC : garcCache.values()) {
+            if (cachedGARC.garc == garc) {
+                cachedGARC.dirty = true;
+            }
+        }
+    }
+
+    private void flushTextCache(GARCArchive textGARC) {
+        Map<Integer, CachedText> textFiles = textCache.get(textGARC);
+        if (textFiles == null) {
+            return;
+        }
+        List<Integer> dirtyIndexes = new ArrayList<>();
+        for (Map.Entry<Integer, CachedText> entry : textFiles.entrySet()) {
+            if (entry.getValue().dirty) {
+                dirtyIndexes.add(entry.getKey());
+            }
+        }
+        if (dirtyIndexes.isEmpty()) {
+            return;
+        }
+
+        // Text files are encoded independently of each other, so encode them all in parallel
+        byte[][] newRawFiles = new byte[dirtyIndexes.size()][];
+        IntStream.range(0, dirtyIndexes.size()).parallel().forEach(i -> {
+            int index = dirtyIndexes.get(i);
+            CachedText cached = textFiles.get(index);
+            try {
+                byte[] oldRawFile = textGARC.files.get(index).get(0);
+                newRawFiles[i] = N3DSTxtHandler.saveEntry(oldRawFile, cached.strings, true, cached.romType);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+
+        boolean changed = false;
+        for (int i = 0; i < dirtyIndexes.size(); i++) {
+            int index = dirtyIndexes.get(i);
+            if (newRawFiles[i] != null) {
+                textGARC.setFile(index, newRawFiles[i]);
+                textFiles.get(index).dirty = false;
+                changed = true;
+            } else {
+                // Encoding failed; forget the edit so the next read decodes the file actually stored
+                textFiles.remove(index);
+            }
+        }
+        if (changed) {
+            markGARCDirty(textGARC);
         }
-        return baseRom.getFile(location);
+    }
+
+    private void flushTextCache() {
+        for (GARCArchive textGARC : textCache.keySet()) {
+            flushTextCache(textGARC);
+        }
+    }
+
+    protected byte[] readFile(String location) throws IOException {
+        flushGARC(location);
+        return getFileSource(location).getFile(location);
+    }
+
+    private NCCH getFileSource(String location) {
+        return fileSources.computeIfAbsent(location,
+                l -> gameUpdate != null && gameUpdate.hasFile(l) ? gameUpdate : baseRom);
     }
 
     protected void writeFile(String location, byte[] data) throws IOException {
@@ -241,9 +459,44 @@ public abstract class Abstract3DSRomHandler extends AbstractRomHandler {
             System.arraycopy(data, offset, newData, 0, length);
             data = newData;
         }
+        // A raw write supersedes whatever we had parsed from this location
+        CachedGARC cached = garcCache.remove(location);
+        if (cached != null) {
+            Map<Integer, CachedText> textFiles = textCache.remove(cached.garc);
+            if (textFiles != null && textFiles.values().stream().anyMatch(t -> t.dirty)) {
+                throw new IllegalStateException("Unsaved text changes in " + location + " would be overwritten");
+            }
+        }
+        writeFileToRoms(location, data);
+    }
+
+    private void writeFileToRoms(String location, byte[] data) throws IOException {
         baseRom.writeFile(location, data);
-        if (gameUpdate != null && gameUpdate.hasFile(location)) {
-            gameUpdate.writeFile(location, data);
+        NCCH source = getFileSource(location);
+        if (source != baseRom) {
+            source.writeFile(location, data);
+        }
+    }
+
+    private static class CachedText {
+        List<String> strings;
+        int romType;
+        boolean dirty;
+
+        CachedText(List<String> strings, int romType) {
+            this.strings = strings;
+            this.romType = romType;
+        }
+    }
+
+    private static class CachedGARC {
+        GARCArchive garc;
+        Object decompressionMode;
+        boolean dirty;
+
+        CachedGARC(GARCArchive garc, Object decompressionMode) {
+            this.garc = garc;
+            this.decompressionMode = decompressionMode;
         }
     }
 
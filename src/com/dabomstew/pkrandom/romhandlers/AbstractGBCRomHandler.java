@@ -25,22 +25,22 @@ package com.dabomstew.pkrandom.romhandlers;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Scanner;
 
-import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TextDecoder;
+import com.dabomstew.pkrandom.TextTable;
+import com.dabomstew.pkrandom.TextTrie;
 import com.dabomstew.pkrandom.constants.GBConstants;
 
 public abstract class AbstractGBCRomHandler extends AbstractGBRomHandler {
 
     private String[] tb;
-    private Map<String, Byte> d;
+    private TextTrie d;
+    private TextDecoder textDecoder;
     private int longestTableToken;
 
     public AbstractGBCRomHandler(Random random, PrintStream logStream) {
@@ -49,61 +49,46 @@ public abstract class AbstractGBCRomHandler extends AbstractGBRomHandler {
 
     protected void clearTextTables() {
         tb = new String[256];
+        textDecoder = new TextDecoder(tb, GBConstants.stringTerminator, -1);
         if (d != null) {
             d.clear();
         } else {
-            d = new HashMap<String, Byte>();
+            d = new TextTrie();
         }
         longestTableToken = 0;
     }
 
     protected void readTextTable(String name) {
         try {
-            Scanner sc = new Scanner(FileFunctions.openConfig(name + ".tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
+            TextTable table = TextTable.load(name + ".tbl");
+            for (int i = 0; i < table.size(); i++) {
+                int hexcode = table.getCode(i);
+                String text = table.getText(i);
+                if (tb[hexcode] != null) {
+                    String oldMatch = tb[hexcode];
+                    tb[hexcode] = null;
+                    // Compared as a signed byte, as this always has been, so codes from 0x80 up keep their old text too
+                    int oldCode = d.get(oldMatch);
+                    if (oldCode >= 0 && (byte) oldCode == hexcode) {
+                        d.remove(oldMatch);
                     }
-                    int hexcode = Integer.parseInt(r[0], 16);
-                    if (tb[hexcode] != null) {
-                        String oldMatch = tb[hexcode];
-                        tb[hexcode] = null;
-                        if (d.get(oldMatch) == hexcode) {
-                            d.remove(oldMatch);
-                        }
-                    }
-                    tb[hexcode] = r[1];
-                    longestTableToken = Math.max(longestTableToken, r[1].length());
-                    d.put(r[1], (byte) hexcode);
                 }
+                tb[hexcode] = text;
+                longestTableToken = Math.max(longestTableToken, text.length());
+                d.put(text, hexcode & 0xFF);
             }
-            sc.close();
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
         }
 
     }
 
     protected String readString(int offset, int maxLength, boolean textEngineMode) {
-        StringBuilder string = new StringBuilder();
-        for (int c = 0; c < maxLength; c++) {
-            int currChar = rom[offset + c] & 0xFF;
-            if (tb[currChar] != null) {
-                string.append(tb[currChar]);
-                if (textEngineMode && (tb[currChar].equals("\\r") || tb[currChar].equals("\\e"))) {
-                    break;
-                }
-            } else {
-                if (currChar == GBConstants.stringTerminator) {
-                    break;
-                } else {
-                    string.append("\\x" + String.format("%02X", currChar));
-                }
-            }
-        }
-        return string.toString();
+        return textDecoder.decode(rom, offset, maxLength, textEngineMode);
+    }
+
+    // Reads count fixed-length strings laid out one after the other, into out starting at outOffset
+    protected void readFixedLengthStrings(int offset, int length, String[] out, int outOffset, int count) {
+        textDecoder.decode(rom, offset, length, length, out, outOffset, count);
     }
 
     protected int lengthOfStringAt(int offset, boolean textEngineMode) {
@@ -121,25 +106,25 @@ public abstract class AbstractGBCRomHandler extends AbstractGBRomHandler {
     }
 
     protected byte[] translateString(String text) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        while (text.length() != 0) {
-            int i = Math.max(0, longestTableToken - text.length());
-            if (text.charAt(0) == '\\' && text.charAt(1) == 'x') {
-                baos.write(Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
+        // No part of the text encodes to more bytes than it has chars
+        byte[] data = new byte[text.length()];
+        int length = 0;
+        int pos = 0;
+        while (pos < text.length()) {
+            if (text.charAt(pos) == '\\' && text.charAt(pos + 1) == 'x') {
+                data[length++] = (byte) Integer.parseInt(text.substring(pos + 2, pos + 4), 16);
+                pos += 4;
             } else {
-                while (!(d.containsKey(text.substring(0, longestTableToken - i)) || (i == longestTableToken))) {
-                    i++;
-                }
-                if (i == longestTableToken) {
-                    text = text.substring(1);
+                int match = d.match(text, pos, longestTableToken);
+                if (match < 0) {
+                    pos++;
                 } else {
-                    baos.write(d.get(text.substring(0, longestTableToken - i)) & 0xFF);
-                    text = text.substring(longestTableToken - i);
+                    data[length++] = (byte) match;
+                    pos += match >>> 16;
                 }
             }
         }
-        return baos.toByteArray();
+        return length == data.length ? data : Arrays.copyOf(data, length);
     }
 
     protected String readFixedLengthString(int offset, int length) {
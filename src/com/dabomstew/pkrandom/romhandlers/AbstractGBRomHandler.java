@@ -41,7 +41,8 @@ import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 public abstract class AbstractGBRomHandler extends AbstractRomHandler {
 
     protected byte[] rom;
-    protected byte[] originalRom;
+    // Only the checksum of the ROM as loaded is needed, so there's no need to keep a whole copy of it
+    private long originalRomCRC32;
     private String loadedFN;
 
     public AbstractGBRomHandler(Random random, PrintStream logStream) {
@@ -55,8 +56,7 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
             return false;
         }
         this.rom = loaded;
-        this.originalRom = new byte[rom.length];
-        System.arraycopy(rom, 0, originalRom, 0, rom.length);
+        this.originalRomCRC32 = FileFunctions.getCRC32(rom);
         loadedFN = filename;
         loadedRom();
         return true;
@@ -115,8 +115,7 @@ public abstract class AbstractGBRomHandler extends AbstractRomHandler {
     public void printRomDiagnostics(PrintStream logStream) {
         Path p = Paths.get(loadedFN);
         logStream.println("File name: " + p.getFileName().toString());
-        long crc = FileFunctions.getCRC32(originalRom);
-        logStream.println("Original ROM CRC32: " + String.format("%08X", crc));
+        logStream.println("Original ROM CRC32: " + String.format("%08X", originalRomCRC32));
     }
 
     @Override
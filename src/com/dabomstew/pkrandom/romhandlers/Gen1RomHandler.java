@@ -329,6 +329,20 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
     private boolean xAccNerfed;
     private long actualCRC32;
     private boolean effectivenessUpdated;
+    private Map<Integer, MascotSprite> mascotSprites;
+
+    // A decompressed front sprite, ready to draw
+    private static class MascotSprite {
+        private final byte[] data;
+        private final int width;
+        private final int height;
+
+        private MascotSprite(byte[] data, int width, int height) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+        }
+    }
 
     @Override
     public boolean detectRom(byte[] rom) {
@@ -349,6 +363,7 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         moveRomToNumTable = new int[256];
         maps = new SubMap[256];
         xAccNerfed = false;
+        mascotSprites = new HashMap<>();
         clearTextTables();
         readTextTable("gameboy_jpn");
         if (romEntry.extraTableFile != null && !romEntry.extraTableFile.equalsIgnoreCase("none")) {
@@ -814,9 +829,7 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
         int nameLength = romEntry.getValue("PokemonNamesLength");
         int pkmnCount = romEntry.getValue("InternalPokemonCount");
         String[] names = new String[pkmnCount + 1];
-        for (int i = 1; i <= pkmnCount; i++) {
-            names[i] = readFixedLengthString(offs + (i - 1) * nameLength, nameLength);
-        }
+        readFixedLengthStrings(offs, nameLength, names, 1, pkmnCount);
         return names;
     }
 
@@ -2838,7 +2851,17 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
                     }
                 } else {
                     // this should never happen, but if not, uh oh
-                    throw new RandomizationException("Unable to save moves/evolutions, out of space");
+                    String spaceLeft;
+                    if (extraSpaceEnabled) {
+                        spaceLeft = String.format("%d bytes left in the main data block and %d in the extra space",
+                                mainDataBlockSize - offsetInMainData, extraSpaceSize - offsetInExtraData);
+                    } else {
+                        spaceLeft = String.format("%d bytes left in the main data block",
+                                mainDataBlockSize - offsetInMainData);
+                    }
+                    throw new RandomizationException(String.format("Unable to save moves/evolutions, out of space: "
+                            + "entry %d needs %d bytes, but bank %02X only has %s", i, lengthToFit, movesEvosBank,
+                            spaceLeft));
                 }
                 if (pointerToWrite >= 0) {
                     writeWord(pointerTable, (i - 1) * 2, pointerToWrite);
@@ -2864,30 +2887,9 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
 
     @Override
     public BufferedImage getMascotImage(Pokemon mascot) {
-        int idx = pokeNumToRBYTable[mascot.number];
-        int fsBank;
-        // define (by index number) the bank that a pokemon's image is in
-        // using pokered code
-        if (mascot.number == Species.mew && !romEntry.isYellow) {
-            fsBank = 1;
-        } else if (idx < 0x1F) {
-            fsBank = 0x9;
-        } else if (idx < 0x4A) {
-            fsBank = 0xA;
-        } else if (idx < 0x74 || idx == 0x74 && mascot.frontSpritePointer > 0x7000) {
-            fsBank = 0xB;
-        } else if (idx < 0x99 || idx == 0x99 && mascot.frontSpritePointer > 0x7000) {
-            fsBank = 0xC;
-        } else {
-            fsBank = 0xD;
-        }
-
-        int fsOffset = calculateOffset(fsBank, mascot.frontSpritePointer);
-        Gen1Decmp mscSprite = new Gen1Decmp(rom, fsOffset);
-        mscSprite.decompress();
-        mscSprite.transpose();
-        int w = mscSprite.getWidth();
-        int h = mscSprite.getHeight();
+        MascotSprite sprite = mascotSprites.computeIfAbsent(mascot.number, n -> decompressFrontSprite(mascot));
+        int w = sprite.width;
+        int h = sprite.height;
 
         // Palette?
         int[] palette;
@@ -2907,12 +2909,36 @@ public class Gen1RomHandler extends AbstractGBCRomHandler {
             palette = new int[] { 0xFFFFFFFF, 0xFFAAAAAA, 0xFF666666, 0xFF000000 };
         }
 
-        byte[] data = mscSprite.getFlattenedData();
-
-        BufferedImage bim = GFXFunctions.drawTiledImage(data, palette, w, h, 8);
+        BufferedImage bim = GFXFunctions.drawTiledImage(sprite.data, palette, w, h, 8);
         GFXFunctions.pseudoTransparency(bim, palette[0]);
 
         return bim;
     }
 
+    private MascotSprite decompressFrontSprite(Pokemon mascot) {
+        int idx = pokeNumToRBYTable[mascot.number];
+        int fsBank;
+        // define (by index number) the bank that a pokemon's image is in
+        // using pokered code
+        if (mascot.number == Species.mew && !romEntry.isYellow) {
+            fsBank = 1;
+        } else if (idx < 0x1F) {
+            fsBank = 0x9;
+        } else if (idx < 0x4A) {
+            fsBank = 0xA;
+        } else if (idx < 0x74 || idx == 0x74 && mascot.frontSpritePointer > 0x7000) {
+            fsBank = 0xB;
+        } else if (idx < 0x99 || idx == 0x99 && mascot.frontSpritePointer > 0x7000) {
+            fsBank = 0xC;
+        } else {
+            fsBank = 0xD;
+        }
+
+        int fsOffset = calculateOffset(fsBank, mascot.frontSpritePointer);
+        Gen1Decmp mscSprite = new Gen1Decmp(rom, fsOffset);
+        mscSprite.decompress();
+        mscSprite.transpose();
+        return new MascotSprite(mscSprite.getFlattenedData(), mscSprite.getWidth(), mscSprite.getHeight());
+    }
+
 }
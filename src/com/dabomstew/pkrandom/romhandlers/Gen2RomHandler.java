@@ -292,6 +292,7 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
     private ItemList allowedItems, nonBadItems;
     private long actualCRC32;
     private boolean effectivenessUpdated;
+    private Map<Integer, byte[]> mascotSprites;
 
     @Override
     public boolean detectRom(byte[] rom) {
@@ -320,6 +321,7 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
             isVietCrystal = false;
         }
         havePatchedFleeing = false;
+        mascotSprites = new HashMap<>();
         loadPokemonStats();
         pokemonList = Arrays.asList(pokes);
         loadMoves();
@@ -788,9 +790,7 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
         int offs = romEntry.getValue("PokemonNamesOffset");
         int len = romEntry.getValue("PokemonNamesLength");
         String[] names = new String[Gen2Constants.pokemonCount + 1];
-        for (int i = 1; i <= Gen2Constants.pokemonCount; i++) {
-            names[i] = readFixedLengthString(offs + (i - 1) * len, len);
-        }
+        readFixedLengthStrings(offs, len, names, 1, Gen2Constants.pokemonCount);
         return names;
     }
 
@@ -2934,30 +2934,9 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
             return null;
         }
 
-        // Each Pokemon has a front and back pic with a bank and a pointer
-        // (3*2=6)
-        // There is no zero-entry.
-        int picPointer = romEntry.getValue("PicPointers") + (mascot.number - 1) * 6;
         int picWidth = mascot.picDimensions & 0x0F;
         int picHeight = (mascot.picDimensions >> 4) & 0x0F;
-
-        int picBank = (rom[picPointer] & 0xFF);
-        if (romEntry.isCrystal) {
-            // Crystal pic banks are offset by x36 for whatever reason.
-            picBank += 0x36;
-        } else {
-            // Hey, G/S are dumb too! Arbitrarily redirected bank numbers.
-            if (picBank == 0x13) {
-                picBank = 0x1F;
-            } else if (picBank == 0x14) {
-                picBank = 0x20;
-            } else if (picBank == 0x1F) {
-                picBank = 0x2E;
-            }
-        }
-        int picOffset = calculateOffset(picBank, readWord(picPointer + 1));
-
-        Gen2Decmp mscSprite = new Gen2Decmp(rom, picOffset, picWidth, picHeight);
+        byte[] data = mascotSprites.computeIfAbsent(mascot.number, n -> decompressFrontPic(mascot, picWidth, picHeight));
         int w = picWidth * 8;
         int h = picHeight * 8;
 
@@ -2975,14 +2954,38 @@ public class Gen2RomHandler extends AbstractGBCRomHandler {
             palette[i + 1] = GFXFunctions.conv16BitColorToARGB(readWord(paletteOffset + i * 2));
         }
 
-        byte[] data = mscSprite.getFlattenedData();
-
         BufferedImage bim = GFXFunctions.drawTiledImage(data, palette, w, h, 8);
         GFXFunctions.pseudoTransparency(bim, palette[0]);
 
         return bim;
     }
 
+    private byte[] decompressFrontPic(Pokemon mascot, int picWidth, int picHeight) {
+        // Each Pokemon has a front and back pic with a bank and a pointer
+        // (3*2=6)
+        // There is no zero-entry.
+        int picPointer = romEntry.getValue("PicPointers") + (mascot.number - 1) * 6;
+
+        int picBank = (rom[picPointer] & 0xFF);
+        if (romEntry.isCrystal) {
+            // Crystal pic banks are offset by x36 for whatever reason.
+            picBank += 0x36;
+        } else {
+            // Hey, G/S are dumb too! Arbitrarily redirected bank numbers.
+            if (picBank == 0x13) {
+                picBank = 0x1F;
+            } else if (picBank == 0x14) {
+                picBank = 0x20;
+            } else if (picBank == 0x1F) {
+                picBank = 0x2E;
+            }
+        }
+        int picOffset = calculateOffset(picBank, readWord(picPointer + 1));
+
+        Gen2Decmp mscSprite = new Gen2Decmp(rom, picOffset, picWidth, picHeight);
+        return mscSprite.getFlattenedData();
+    }
+
     @Override
     public void writeCheckValueToROM(int value) {
         if (romEntry.getValue("CheckValueOffset") > 0) {
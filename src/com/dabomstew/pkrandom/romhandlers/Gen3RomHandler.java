@@ -323,20 +323,11 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
     private void loadTextTable(String filename) {
         try {
-            Scanner sc = new Scanner(FileFunctions.openConfig(filename + ".tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
-                    }
-                    tb[Integer.parseInt(r[0], 16)] = r[1];
-                    d.put(r[1], (byte) Integer.parseInt(r[0], 16));
-                }
-            }
-            sc.close();
-        } catch (FileNotFoundException e) {
+            TextTable table = TextTable.load(filename + ".tbl");
+            tb = table.getDecodeTable();
+            d = table.getEncodeTrie();
+            textDecoder = new TextDecoder(tb, Gen3Constants.textTerminator, Gen3Constants.textVariable);
+        } catch (IOException e) {
             System.err.println("File not found!");
         }
 
@@ -351,7 +342,8 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     private RomEntry romEntry;
     private boolean havePatchedObedience;
     private String[] tb;
-    public Map<String, Byte> d;
+    private TextTrie d;
+    private TextDecoder textDecoder;
     private String[] abilityNames;
     private String[] itemNames;
     private boolean mapLoadingDone;
@@ -365,6 +357,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
     private int pickupItemsTableOffset;
     private long actualCRC32;
     private boolean effectivenessUpdated;
+    private FreeSpaceAllocator freeSpace;
 
     @Override
     public boolean detectRom(byte[] rom) {
@@ -384,16 +377,18 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             rom[Gen3Constants.romCodeOffset + 3] = 'T';
             rom[Gen3Constants.headerChecksumOffset] = 0x66;
         }
+        List<List<Integer>> headers = findEach(rom, Gen3Constants.wildPokemonPointerPrefix,
+                Gen3Constants.mapBanksPointerPrefix, Gen3Constants.pokedexOrderPointerPrefix);
         // Wild Pokemon header
-        if (find(rom, Gen3Constants.wildPokemonPointerPrefix) == -1) {
+        if (headers.get(0).isEmpty()) {
             return false;
         }
         // Map Banks header
-        if (find(rom, Gen3Constants.mapBanksPointerPrefix) == -1) {
+        if (headers.get(1).isEmpty()) {
             return false;
         }
         // Pokedex Order header
-        if (findMultiple(rom, Gen3Constants.pokedexOrderPointerPrefix).size() != 3) {
+        if (headers.get(2).size() != 3) {
             return false;
         }
         for (RomEntry re : roms) {
@@ -414,17 +409,26 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         }
 
         tb = new String[256];
-        d = new HashMap<>();
+        d = new TextTrie();
+        textDecoder = new TextDecoder(tb, Gen3Constants.textTerminator, Gen3Constants.textVariable);
         isRomHack = false;
         jamboMovesetHack = false;
+        freeSpace = null;
+
+        // Everything located by searching for the pointers to it, found in one pass
+        List<List<Integer>> pointerLocations = findEach(rom, Gen3Constants.pokedexOrderPointerPrefix,
+                Gen3Constants.rsPokemonNamesPointerSuffix, Gen3Constants.wildPokemonPointerPrefix,
+                Gen3Constants.mapBanksPointerPrefix,
+                romEntry.romType == Gen3Constants.RomType_FRLG ? Gen3Constants.frlgMapLabelsPointerPrefix
+                        : Gen3Constants.rseMapLabelsPointerPrefix);
 
         // Pokemon count stuff, needs to be available first
-        List<Integer> pokedexOrderPrefixes = findMultiple(rom, Gen3Constants.pokedexOrderPointerPrefix);
+        List<Integer> pokedexOrderPrefixes = pointerLocations.get(0);
         romEntry.entries.put("PokedexOrder", readPointer(pokedexOrderPrefixes.get(1) + 16));
 
         // Pokemon names offset
         if (romEntry.romType == Gen3Constants.RomType_Ruby || romEntry.romType == Gen3Constants.RomType_Sapp) {
-            int baseNomOffset = find(rom, Gen3Constants.rsPokemonNamesPointerSuffix);
+            int baseNomOffset = uniqueOffset(pointerLocations.get(1));
             romEntry.entries.put("PokemonNames", readPointer(baseNomOffset - 4));
             romEntry.entries.put(
                     "FrontSprites",
@@ -461,22 +465,17 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         loadMoves();
 
         // Get wild Pokemon offset
-        int baseWPOffset = findMultiple(rom, Gen3Constants.wildPokemonPointerPrefix).get(0);
+        int baseWPOffset = pointerLocations.get(2).get(0);
         romEntry.entries.put("WildPokemon", readPointer(baseWPOffset + 12));
 
         // map banks
-        int baseMapsOffset = findMultiple(rom, Gen3Constants.mapBanksPointerPrefix).get(0);
+        int baseMapsOffset = pointerLocations.get(3).get(0);
         romEntry.entries.put("MapHeaders", readPointer(baseMapsOffset + 12));
         this.determineMapBankSizes();
 
         // map labels
-        if (romEntry.romType == Gen3Constants.RomType_FRLG) {
-            int baseMLOffset = find(rom, Gen3Constants.frlgMapLabelsPointerPrefix);
-            romEntry.entries.put("MapLabels", readPointer(baseMLOffset + 12));
-        } else {
-            int baseMLOffset = find(rom, Gen3Constants.rseMapLabelsPointerPrefix);
-            romEntry.entries.put("MapLabels", readPointer(baseMLOffset + 12));
-        }
+        int baseMLOffset = uniqueOffset(pointerLocations.get(4));
+        romEntry.entries.put("MapLabels", readPointer(baseMLOffset + 12));
 
         mapLoadingDone = false;
         loadAbilityNames();
@@ -1343,60 +1342,66 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         int nameLen = romEntry.getValue("PokemonNameLength");
         int numInternalPokes = romEntry.getValue("PokemonCount");
         pokeNames = new String[numInternalPokes + 1];
-        for (int i = 1; i <= numInternalPokes; i++) {
-            pokeNames[i] = readFixedLengthString(offs + i * nameLen, nameLen);
-        }
+        textDecoder.decode(rom, offs + nameLen, nameLen, nameLen, pokeNames, 1, numInternalPokes);
     }
 
     private String readString(int offset, int maxLength) {
-        StringBuilder string = new StringBuilder();
-        for (int c = 0; c < maxLength; c++) {
-            int currChar = rom[offset + c] & 0xFF;
-            if (tb[currChar] != null) {
-                string.append(tb[currChar]);
-            } else {
-                if (currChar == Gen3Constants.textTerminator) {
-                    break;
-                } else if (currChar == Gen3Constants.textVariable) {
-                    int nextChar = rom[offset + c + 1] & 0xFF;
-                    string.append("\\v").append(String.format("%02X", nextChar));
-                    c++;
-                } else {
-                    string.append("\\x").append(String.format("%02X", currChar));
-                }
-            }
-        }
-        return string.toString();
+        return textDecoder.decode(rom, offset, maxLength, false);
     }
 
     private byte[] translateString(String text) {
-        List<Byte> data = new ArrayList<>();
-        while (text.length() != 0) {
-            int i = Math.max(0, 4 - text.length());
-            if (text.charAt(0) == '\\' && text.charAt(1) == 'x') {
-                data.add((byte) Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else if (text.charAt(0) == '\\' && text.charAt(1) == 'v') {
-                data.add((byte) Gen3Constants.textVariable);
-                data.add((byte) Integer.parseInt(text.substring(2, 4), 16));
-                text = text.substring(4);
-            } else {
-                while (!(d.containsKey(text.substring(0, 4 - i)) || (i == 4))) {
-                    i++;
+        // No part of the text encodes to more bytes than it has chars
+        byte[] data = new byte[text.length()];
+        int length = translateString(text, data);
+        return length == data.length ? data : Arrays.copyOf(data, length);
+    }
+
+    // Encodes text into data, or only works out the encoded length if data is null
+    private int translateString(String text, byte[] data) {
+        int length = 0;
+        int pos = 0;
+        while (pos < text.length()) {
+            if (text.charAt(pos) == '\\' && text.charAt(pos + 1) == 'x') {
+                int value = parseHexByte(text, pos + 2);
+                if (data != null) {
+                    data[length] = (byte) value;
+                }
+                length++;
+                pos += 4;
+            } else if (text.charAt(pos) == '\\' && text.charAt(pos + 1) == 'v') {
+                int value = parseHexByte(text, pos + 2);
+                if (data != null) {
+                    data[length] = (byte) Gen3Constants.textVariable;
+                    data[length + 1] = (byte) value;
                 }
-                if (i == 4) {
-                    text = text.substring(1);
+                length += 2;
+                pos += 4;
+            } else {
+                int match = d.match(text, pos, 4);
+                if (match < 0) {
+                    pos++;
                 } else {
-                    data.add(d.get(text.substring(0, 4 - i)));
-                    text = text.substring(4 - i);
+                    if (data != null) {
+                        data[length] = (byte) match;
+                    }
+                    length++;
+                    pos += match >>> 16;
                 }
             }
         }
-        byte[] ret = new byte[data.size()];
-        for (int i = 0; i < ret.length; i++) {
-            ret[i] = data.get(i);
+        return length;
+    }
+
+    private static int parseHexByte(String text, int offset) {
+        if (offset + 2 > text.length()) {
+            throw new StringIndexOutOfBoundsException(offset + 2);
+        }
+        int high = Character.digit(text.charAt(offset), 16);
+        int low = Character.digit(text.charAt(offset + 1), 16);
+        if (high < 0 || low < 0) {
+            throw new NumberFormatException("For input string: \"" + text.substring(offset, offset + 2) + "\"");
         }
-        return ret;
+        return (high << 4) | low;
     }
 
     private String readFixedLengthString(int offset, int length) {
@@ -1548,12 +1553,14 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             if (romEntry.romCode.charAt(3) != 'J' && romEntry.romCode.charAt(3) != 'B') {
                 // Update PROF. Oak's descriptions for each starter
                 // First result for each STARTERNAME is the text we need
-                List<Integer> bulbasaurFoundTexts = RomFunctions.search(rom, translateString(pokes[Gen3Constants.frlgBaseStarter1].name.toUpperCase()));
-                List<Integer> charmanderFoundTexts = RomFunctions.search(rom, translateString(pokes[Gen3Constants.frlgBaseStarter2].name.toUpperCase()));
-                List<Integer> squirtleFoundTexts = RomFunctions.search(rom, translateString(pokes[Gen3Constants.frlgBaseStarter3].name.toUpperCase()));
-                writeFRLGStarterText(bulbasaurFoundTexts, newStarters.get(0), "you want to go with\\nthe ");
-                writeFRLGStarterText(charmanderFoundTexts, newStarters.get(1), "you’re claiming the\\n");
-                writeFRLGStarterText(squirtleFoundTexts, newStarters.get(2), "you’ve decided on the\\n");
+                MultiPatternSearch starterNames = new MultiPatternSearch();
+                starterNames.add(translateString(pokes[Gen3Constants.frlgBaseStarter1].name.toUpperCase()));
+                starterNames.add(translateString(pokes[Gen3Constants.frlgBaseStarter2].name.toUpperCase()));
+                starterNames.add(translateString(pokes[Gen3Constants.frlgBaseStarter3].name.toUpperCase()));
+                List<List<Integer>> foundTexts = starterNames.search(rom);
+                writeFRLGStarterText(foundTexts.get(0), newStarters.get(0), "you want to go with\\nthe ");
+                writeFRLGStarterText(foundTexts.get(1), newStarters.get(1), "you’re claiming the\\n");
+                writeFRLGStarterText(foundTexts.get(2), newStarters.get(2), "you’ve decided on the\\n");
             }
         }
         return true;
@@ -1984,7 +1991,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             // now, do we need to repoint?
             int pointerToPokes;
             if (newDataSize > oldDataSize) {
-                int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, newDataSize, fso, true);
+                int writeSpace = allocateFreeSpace(newDataSize);
                 if (writeSpace < fso) {
                     throw new RandomizerIOException("ROM is full");
                 }
@@ -2171,7 +2178,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
             if (newMoveCount > currentMoveCount) {
                 // Repoint for more space
                 int newBytesNeeded = newMoveCount * entrySize + entrySize * 2;
-                int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, newBytesNeeded, fso);
+                int writeSpace = allocateFreeSpace(newBytesNeeded);
                 if (writeSpace < fso) {
                     throw new RandomizerIOException("ROM is full");
                 }
@@ -2646,8 +2653,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 String newItemDesc = RomFunctions.rewriteDescriptionForNewLineSize(moveDesc, "\\n", limitPerLine, ssd);
                 // Find freespace
                 int fsBytesNeeded = translateString(newItemDesc).length + 1;
-                int newItemDescOffset = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, fsBytesNeeded,
-                        fsOffset);
+                int newItemDescOffset = allocateFreeSpace(fsBytesNeeded);
                 if (newItemDescOffset < fsOffset) {
                     String nl = System.getProperty("line.separator");
                     log("Couldn't insert new item description." + nl);
@@ -2678,7 +2684,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 newText = newText.replace(tmpMoveName, moveName);
                 // insert the new text into free space
                 int fsBytesNeeded = translateString(newText).length + 1;
-                int newOffset = RomFunctions.freeSpaceFinder(rom, (byte) 0xFF, fsBytesNeeded, fsOffset);
+                int newOffset = allocateFreeSpace(fsBytesNeeded);
                 if (newOffset < fsOffset) {
                     String nl = System.getProperty("line.separator");
                     log("Couldn't insert new TM text." + nl);
@@ -2701,7 +2707,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         }
     }
 
-    private RomFunctions.StringSizeDeterminer ssd = encodedText -> translateString(encodedText).length;
+    private RomFunctions.StringSizeDeterminer ssd = encodedText -> translateString(encodedText, null);
 
     @Override
     public int getTMCount() {
@@ -2795,7 +2801,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 newText = newText.replace(tmpMoveName, moveName);
                 // insert the new text into free space
                 int fsBytesNeeded = translateString(newText).length + 1;
-                int newOffset = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, fsBytesNeeded, fsOffset);
+                int newOffset = allocateFreeSpace(fsBytesNeeded);
                 if (newOffset < fsOffset) {
                     String nl = System.getProperty("line.separator");
                     log("Couldn't insert new Move Tutor text." + nl);
@@ -2885,7 +2891,10 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         for (int i = 0; i < searchFor.length; i++) {
             searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
         }
-        List<Integer> found = RomFunctions.search(haystack, searchFor);
+        return uniqueOffset(RomFunctions.search(haystack, searchFor));
+    }
+
+    private static int uniqueOffset(List<Integer> found) {
         if (found.size() == 0) {
             return -1; // not found
         } else if (found.size() > 1) {
@@ -2910,6 +2919,39 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         return RomFunctions.search(haystack, searchFor);
     }
 
+    // What findMultiple would give for each of hexStrings, found in a single pass over haystack
+    private static List<List<Integer>> findEach(byte[] haystack, String... hexStrings) {
+        MultiPatternSearch search = new MultiPatternSearch();
+        int[] patterns = new int[hexStrings.length];
+        for (int p = 0; p < hexStrings.length; p++) {
+            String hexString = hexStrings[p];
+            if (hexString.length() % 2 != 0) {
+                patterns[p] = -1; // error
+                continue;
+            }
+            byte[] searchFor = new byte[hexString.length() / 2];
+            for (int i = 0; i < searchFor.length; i++) {
+                searchFor[i] = (byte) Integer.parseInt(hexString.substring(i * 2, i * 2 + 2), 16);
+            }
+            patterns[p] = search.add(searchFor);
+        }
+        List<List<Integer>> found = search.search(haystack);
+        List<List<Integer>> results = new ArrayList<>(hexStrings.length);
+        for (int pattern : patterns) {
+            results.add(pattern < 0 ? new ArrayList<>() : found.get(pattern));
+        }
+        return results;
+    }
+
+    // Free space from the FreeSpace offset on, only searched for the first time any is needed
+    private int allocateFreeSpace(int amount) {
+        if (freeSpace == null) {
+            freeSpace = new FreeSpaceAllocator(rom, Gen3Constants.freeSpaceByte, romEntry.getValue("FreeSpace"),
+                    rom.length);
+        }
+        return freeSpace.allocate(amount, true);
+    }
+
     private void writeHexString(String hexString, int offset) {
         if (hexString.length() % 2 != 0) {
             return; // error
@@ -2993,7 +3035,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 return;
             }
             // Find free space for our new routine
-            int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, 44, fso);
+            int writeSpace = allocateFreeSpace(44);
             if (writeSpace < fso) {
                 log("Patch unsuccessful." + nl);
                 // Somehow this ROM is full
@@ -3012,7 +3054,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 return;
             }
             // Find free space for our new routine
-            int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, 10, fso);
+            int writeSpace = allocateFreeSpace(10);
             if (writeSpace < fso) {
                 // Somehow this ROM is full
                 log("Patch unsuccessful." + nl);
@@ -3070,7 +3112,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
                 return;
             }
             // Find free space for our new routine
-            int writeSpace = RomFunctions.freeSpaceFinder(rom, Gen3Constants.freeSpaceByte, 27, fso);
+            int writeSpace = allocateFreeSpace(27);
             if (writeSpace < fso) {
                 // Somehow this ROM is full
                 log("Patch unsuccessful." + nl);
@@ -3602,9 +3644,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         int nameoffs = romEntry.getValue("AbilityNames");
         int namelen = romEntry.getValue("AbilityNameLength");
         abilityNames = new String[Gen3Constants.highestAbilityIndex + 1];
-        for (int i = 0; i <= Gen3Constants.highestAbilityIndex; i++) {
-            abilityNames[i] = readFixedLengthString(nameoffs + namelen * i, namelen);
-        }
+        textDecoder.decode(rom, nameoffs, namelen, namelen, abilityNames, 0, abilityNames.length);
     }
 
     @Override
@@ -3635,7 +3675,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
 
     @Override
     public int internalStringLength(String string) {
-        return translateString(string).length;
+        return translateString(string, null);
     }
 
     @Override
@@ -3898,9 +3938,7 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         int structlen = romEntry.getValue("ItemEntrySize");
         int maxcount = romEntry.getValue("ItemCount");
         itemNames = new String[maxcount + 1];
-        for (int i = 0; i <= maxcount; i++) {
-            itemNames[i] = readVariableLengthString(nameoffs + structlen * i);
-        }
+        textDecoder.decode(rom, nameoffs, structlen, Integer.MAX_VALUE, itemNames, 0, itemNames.length);
     }
 
     @Override
@@ -4394,8 +4432,9 @@ public class Gen3RomHandler extends AbstractGBRomHandler {
         int fsOffset = readPointer(frontSprites + mascotPokemon * 8);
         int palOffset = readPointer(palettes + mascotPokemon * 8);
 
-        byte[] trueFrontSprite = DSDecmp.Decompress(rom, fsOffset);
-        byte[] truePalette = DSDecmp.Decompress(rom, palOffset);
+        // Only the first frame of the sprite and the 16 colors of the palette are needed
+        byte[] trueFrontSprite = DSDecmp.Decompress(rom, fsOffset, 64 * 64 / 2);
+        byte[] truePalette = DSDecmp.Decompress(rom, palOffset, 16 * 2);
 
         // Convert palette into RGB
         int[] convPalette = new int[16];
@@ -465,6 +465,8 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     private Move[] moves;
     private NARCArchive pokeNarc, moveNarc;
     private NARCArchive msgNarc;
+    // Decoded message files by index. Edited ones are only encoded again when needed.
+    private Map<Integer, CachedText> textCache;
     private NARCArchive scriptNarc;
     private NARCArchive eventNarc;
     private byte[] arm9;
@@ -513,6 +515,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
+        textCache = new HashMap<>();
         try {
             scriptNarc = readNARC(romEntry.getFile("Scripts"));
         } catch (IOException e) {
@@ -1096,6 +1099,7 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
             throw new RandomizerIOException(e);
         }
         try {
+            flushTextCache();
             writeNARC(romEntry.getFile("Text"), msgNarc);
         } catch (IOException e) {
             throw new RandomizerIOException(e);
@@ -4058,10 +4062,20 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     private boolean lastStringsCompressed = false;
 
     private List<String> getStrings(int index) {
-        PokeTextData pt = new PokeTextData(msgNarc.files.get(index));
-        pt.decrypt();
-        lastStringsCompressed = pt.compressFlag;
-        return new ArrayList<>(pt.strlist);
+        CachedText cached = textCache.get(index);
+        if (cached != null && cached.dirty) {
+            // Hand back what the edited strings actually encode to, not what was passed in
+            flushText(index, cached);
+            cached = null;
+        }
+        if (cached == null) {
+            PokeTextData pt = new PokeTextData(msgNarc.files.get(index));
+            pt.decrypt();
+            cached = new CachedText(pt.strlist, pt.compressFlag);
+            textCache.put(index, cached);
+        }
+        lastStringsCompressed = cached.compressed;
+        return new ArrayList<>(cached.strings);
     }
 
     private void setStrings(int index, List<String> newStrings) {
@@ -4069,7 +4083,13 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
     }
 
     private void setStrings(int index, List<String> newStrings, boolean compressed) {
-        byte[] rawUnencrypted = TextToPoke.MakeFile(newStrings, compressed);
+        CachedText cached = new CachedText(new ArrayList<>(newStrings), compressed);
+        cached.dirty = true;
+        textCache.put(index, cached);
+    }
+
+    private void flushText(int index, CachedText cached) {
+        byte[] rawUnencrypted = TextToPoke.MakeFile(cached.strings, cached.compressed);
 
         // make new encrypted name set
         PokeTextData encrypt = new PokeTextData(rawUnencrypted);
@@ -4078,6 +4098,26 @@ public class Gen4RomHandler extends AbstractDSRomHandler {
 
         // rewrite
         msgNarc.files.set(index, encrypt.get());
+        textCache.remove(index);
+    }
+
+    private void flushTextCache() {
+        for (Map.Entry<Integer, CachedText> entry : new ArrayList<>(textCache.entrySet())) {
+            if (entry.getValue().dirty) {
+                flushText(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static class CachedText {
+        List<String> strings;
+        boolean compressed;
+        boolean dirty;
+
+        CachedText(List<String> strings, boolean compressed) {
+            this.strings = strings;
+            this.compressed = compressed;
+        }
     }
 
     @Override
@@ -402,6 +402,8 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
     private Map<String, Long> actualFileCRC32s;
     
     private NARCArchive pokeNarc, moveNarc, stringsNarc, storyTextNarc, scriptNarc, shopNarc;
+    // Decoded text files by NARC and index. Edited ones are only encoded again when needed.
+    private Map<NARCArchive, Map<Integer, CachedText>> textCache;
 
     @Override
     protected boolean detectNDSRom(String ndsCode, byte version) {
@@ -439,6 +441,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
         } catch (IOException e) {
             throw new RandomizerIOException(e);
         }
+        textCache = new IdentityHashMap<>();
 
         try {
             scriptNarc = readNARC(romEntry.getFile("Scripts"));
@@ -712,6 +715,7 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
             throw new RandomizerIOException(e);
         }
         try {
+            flushTextCache();
             writeNARC(romEntry.getFile("TextStrings"), stringsNarc);
             writeNARC(romEntry.getFile("TextStory"), storyTextNarc);
         } catch (IOException e) {
@@ -2971,15 +2975,51 @@ public class Gen5RomHandler extends AbstractDSRomHandler {
 
     private List<String> getStrings(boolean isStoryText, int index) {
         NARCArchive baseNARC = isStoryText ? storyTextNarc : stringsNarc;
-        byte[] rawFile = baseNARC.files.get(index);
-        return new ArrayList<>(PPTxtHandler.readTexts(rawFile));
+        Map<Integer, CachedText> textFiles = textCache.computeIfAbsent(baseNARC, n -> new HashMap<>());
+        CachedText cached = textFiles.get(index);
+        if (cached != null && cached.dirty) {
+            // Hand back what the edited strings actually encode to, not what was passed in
+            flushText(baseNARC, index, cached);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = new CachedText(PPTxtHandler.readTexts(baseNARC.files.get(index)));
+            textFiles.put(index, cached);
+        }
+        return new ArrayList<>(cached.strings);
     }
 
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
         NARCArchive baseNARC = isStoryText ? storyTextNarc : stringsNarc;
+        CachedText cached = new CachedText(new ArrayList<>(strings));
+        cached.dirty = true;
+        textCache.computeIfAbsent(baseNARC, n -> new HashMap<>()).put(index, cached);
+    }
+
+    private void flushText(NARCArchive baseNARC, int index, CachedText cached) {
         byte[] oldRawFile = baseNARC.files.get(index);
-        byte[] newRawFile = PPTxtHandler.saveEntry(oldRawFile, strings);
+        byte[] newRawFile = PPTxtHandler.saveEntry(oldRawFile, cached.strings);
         baseNARC.files.set(index, newRawFile);
+        textCache.get(baseNARC).remove(index);
+    }
+
+    private void flushTextCache() {
+        for (Map.Entry<NARCArchive, Map<Integer, CachedText>> textFiles : textCache.entrySet()) {
+            for (Map.Entry<Integer, CachedText> entry : new ArrayList<>(textFiles.getValue().entrySet())) {
+                if (entry.getValue().dirty) {
+                    flushText(textFiles.getKey(), entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private static class CachedText {
+        List<String> strings;
+        boolean dirty;
+
+        CachedText(List<String> strings) {
+            this.strings = strings;
+        }
     }
 
     @Override
@@ -30,7 +30,6 @@ import com.dabomstew.pkrandom.ctr.GARCArchive;
 import com.dabomstew.pkrandom.ctr.Mini;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import com.dabomstew.pkrandom.pokemon.*;
-import pptxt.N3DSTxtHandler;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
@@ -294,27 +293,11 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     protected void loadedROM(String productCode, String titleId) {
         this.romEntry = entryFor(productCode, titleId);
 
-        try {
-            code = readCode();
-        } catch (IOException e) {
-            throw new RandomizerIOException(e);
-        }
-
-        try {
-            stringsGarc = readGARC(romEntry.getFile("TextStrings"),true);
-            storyTextGarc = readGARC(romEntry.getFile("StoryText"), true);
-        } catch (IOException e) {
-            throw new RandomizerIOException(e);
-        }
-
+        loadCode();
+        loadText();
         loadPokemonStats();
         loadMoves();
-
-        pokemonListInclFormes = Arrays.asList(pokes);
-        pokemonList = Arrays.asList(Arrays.copyOfRange(pokes,0,Gen6Constants.pokemonCount + 1));
-
-        abilityNames = getStrings(false,romEntry.getInt("AbilityNamesTextOffset"));
-        itemNames = getStrings(false,romEntry.getInt("ItemNamesTextOffset"));
+        loadAbilityAndItemNames();
         shopNames = Gen6Constants.getShopNames(romEntry.romType);
 
         loadedWildMapNames = false;
@@ -332,6 +315,60 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
         }
     }
 
+    @Override
+    protected void gameUpdateChanged(Set<String> changedFiles) {
+        loadCode();
+        boolean textChanged = isAnyFileChanged(changedFiles, "TextStrings");
+        if (textChanged || isAnyFileChanged(changedFiles, "StoryText")) {
+            loadText();
+        }
+        if (textChanged || isAnyFileChanged(changedFiles, "PokemonStats", "PokemonEvolutions", "MegaEvolutions")) {
+            loadPokemonStats();
+        }
+        if (textChanged || isAnyFileChanged(changedFiles, "MoveData")) {
+            loadMoves();
+        }
+        if (textChanged) {
+            loadAbilityAndItemNames();
+        }
+        if (textChanged || isAnyFileChanged(changedFiles, "WildPokemon", "TrainerData")) {
+            loadedWildMapNames = false;
+        }
+
+        try {
+            computeCRC32sForFiles(changedFiles);
+        } catch (IOException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
+    @Override
+    protected String getRomFile(String fileKey) {
+        return romEntry.getFile(fileKey);
+    }
+
+    private void loadCode() {
+        try {
+            code = readCode();
+        } catch (IOException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
+    private void loadText() {
+        try {
+            stringsGarc = readGARC(romEntry.getFile("TextStrings"),true);
+            storyTextGarc = readGARC(romEntry.getFile("StoryText"), true);
+        } catch (IOException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
+    private void loadAbilityAndItemNames() {
+        abilityNames = getStrings(false,romEntry.getInt("AbilityNamesTextOffset"));
+        itemNames = getStrings(false,romEntry.getInt("ItemNamesTextOffset"));
+    }
+
     private void loadPokemonStats() {
         try {
             pokeGarc = this.readGARC(romEntry.getFile("PokemonStats"),true);
@@ -384,6 +421,9 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
         }
         populateEvolutions();
         populateMegaEvolutions();
+
+        pokemonListInclFormes = Arrays.asList(pokes);
+        pokemonList = Arrays.asList(Arrays.copyOfRange(pokes,0,Gen6Constants.pokemonCount + 1));
     }
 
     private void loadBasicPokeStats(Pokemon pkmn, byte[] stats, Map<Integer,FormeInfo> altFormes) {
@@ -566,8 +606,7 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     }
 
     private List<String> getStrings(GARCArchive textGARC, int index) {
-        byte[] rawFile = textGARC.files.get(index).get(0);
-        return new ArrayList<>(N3DSTxtHandler.readTexts(rawFile,true,romEntry.romType));
+        return getStrings(textGARC, index, romEntry.romType);
     }
 
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
@@ -576,13 +615,7 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
     }
 
     private void setStrings(GARCArchive textGARC, int index, List<String> strings) {
-        byte[] oldRawFile = textGARC.files.get(index).get(0);
-        try {
-            byte[] newRawFile = N3DSTxtHandler.saveEntry(oldRawFile, strings, romEntry.romType);
-            textGARC.setFile(index, newRawFile);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        setStrings(textGARC, index, strings, romEntry.romType);
     }
 
     private void loadMoves() {
@@ -4105,6 +4138,16 @@ public class Gen6RomHandler extends Abstract3DSRomHandler {
         }
     }
 
+    private void computeCRC32sForFiles(Set<String> changedFiles) throws IOException {
+        this.actualCodeCRC32 = FileFunctions.getCRC32(code);
+        for (String fileKey : romEntry.files.keySet()) {
+            if (changedFiles.contains(romEntry.getFile(fileKey))) {
+                byte[] file = readFile(romEntry.getFile(fileKey));
+                this.actualFileCRC32s.put(fileKey, FileFunctions.getCRC32(file));
+            }
+        }
+    }
+
     @Override
     public boolean isRomValid() {
         int index = this.hasGameUpdateLoaded() ? 1 : 0;
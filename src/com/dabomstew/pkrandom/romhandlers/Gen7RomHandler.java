@@ -34,7 +34,6 @@ import com.dabomstew.pkrandom.ctr.GARCArchive;
 import com.dabomstew.pkrandom.ctr.Mini;
 import com.dabomstew.pkrandom.exceptions.RandomizerIOException;
 import com.dabomstew.pkrandom.pokemon.*;
-import pptxt.N3DSTxtHandler;
 
 import java.awt.image.BufferedImage;
 import java.io.*;
@@ -291,28 +290,12 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     protected void loadedROM(String productCode, String titleId) {
         this.romEntry = entryFor(productCode, titleId);
 
-        try {
-            code = readCode();
-        } catch (IOException e) {
-            throw new RandomizerIOException(e);
-        }
-
-        try {
-            stringsGarc = readGARC(romEntry.getFile("TextStrings"), true);
-            storyTextGarc = readGARC(romEntry.getFile("StoryText"), true);
-            areaDataList = getAreaData();
-        } catch (IOException e) {
-            throw new RandomizerIOException(e);
-        }
-
+        loadCode();
+        loadText();
+        loadAreaData();
         loadPokemonStats();
         loadMoves();
-
-        pokemonListInclFormes = Arrays.asList(pokes);
-        pokemonList = Arrays.asList(Arrays.copyOfRange(pokes,0,Gen7Constants.getPokemonCount(romEntry.romType) + 1));
-
-        itemNames = getStrings(false,romEntry.getInt("ItemNamesTextOffset"));
-        abilityNames = getStrings(false,romEntry.getInt("AbilityNamesTextOffset"));
+        loadItemAndAbilityNames();
         shopNames = Gen7Constants.getShopNames(romEntry.romType);
 
         allowedItems = Gen7Constants.getAllowedItems(romEntry.romType).copy();
@@ -335,8 +318,7 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     }
 
     private List<String> getStrings(GARCArchive textGARC, int index) {
-        byte[] rawFile = textGARC.files.get(index).get(0);
-        return new ArrayList<>(N3DSTxtHandler.readTexts(rawFile,true,romEntry.romType));
+        return getStrings(textGARC, index, romEntry.romType);
     }
 
     private void setStrings(boolean isStoryText, int index, List<String> strings) {
@@ -345,15 +327,71 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
     }
 
     private void setStrings(GARCArchive textGARC, int index, List<String> strings) {
-        byte[] oldRawFile = textGARC.files.get(index).get(0);
+        setStrings(textGARC, index, strings, romEntry.romType);
+    }
+
+    @Override
+    protected void gameUpdateChanged(Set<String> changedFiles) {
+        loadCode();
+        boolean textChanged = isAnyFileChanged(changedFiles, "TextStrings");
+        if (textChanged || isAnyFileChanged(changedFiles, "StoryText")) {
+            loadText();
+        }
+        if (textChanged || isAnyFileChanged(changedFiles, "WorldData", "ZoneData", "WildPokemon")) {
+            loadAreaData();
+        }
+        if (textChanged || isAnyFileChanged(changedFiles, "PokemonStats", "PokemonEvolutions", "MegaEvolutions")) {
+            loadPokemonStats();
+        }
+        if (textChanged || isAnyFileChanged(changedFiles, "MoveData")) {
+            loadMoves();
+        }
+        if (textChanged) {
+            loadItemAndAbilityNames();
+        }
+
         try {
-            byte[] newRawFile = N3DSTxtHandler.saveEntry(oldRawFile, strings, romEntry.romType);
-            textGARC.setFile(index, newRawFile);
+            computeCRC32sForFiles(changedFiles);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new RandomizerIOException(e);
         }
     }
 
+    @Override
+    protected String getRomFile(String fileKey) {
+        return romEntry.getFile(fileKey);
+    }
+
+    private void loadCode() {
+        try {
+            code = readCode();
+        } catch (IOException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
+    private void loadText() {
+        try {
+            stringsGarc = readGARC(romEntry.getFile("TextStrings"), true);
+            storyTextGarc = readGARC(romEntry.getFile("StoryText"), true);
+        } catch (IOException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
+    private void loadAreaData() {
+        try {
+            areaDataList = getAreaData();
+        } catch (IOException e) {
+            throw new RandomizerIOException(e);
+        }
+    }
+
+    private void loadItemAndAbilityNames() {
+        itemNames = getStrings(false,romEntry.getInt("ItemNamesTextOffset"));
+        abilityNames = getStrings(false,romEntry.getInt("AbilityNamesTextOffset"));
+    }
+
     private void loadPokemonStats() {
         try {
             pokeGarc = this.readGARC(romEntry.getFile("PokemonStats"),true);
@@ -412,6 +450,9 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
         }
         populateEvolutions();
         populateMegaEvolutions();
+
+        pokemonListInclFormes = Arrays.asList(pokes);
+        pokemonList = Arrays.asList(Arrays.copyOfRange(pokes,0,Gen7Constants.getPokemonCount(romEntry.romType) + 1));
     }
 
     private void loadBasicPokeStats(Pokemon pkmn, byte[] stats, Map<Integer,FormeInfo> altFormes) {
@@ -3651,6 +3692,16 @@ public class Gen7RomHandler extends Abstract3DSRomHandler {
         }
     }
 
+    private void computeCRC32sForFiles(Set<String> changedFiles) throws IOException {
+        this.actualCodeCRC32 = FileFunctions.getCRC32(code);
+        for (String fileKey : romEntry.files.keySet()) {
+            if (changedFiles.contains(romEntry.getFile(fileKey))) {
+                byte[] file = readFile(romEntry.getFile(fileKey));
+                this.actualFileCRC32s.put(fileKey, FileFunctions.getCRC32(file));
+            }
+        }
+    }
+
     @Override
     public boolean isRomValid() {
         int index = this.hasGameUpdateLoaded() ? 1 : 0;
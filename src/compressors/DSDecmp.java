@@ -2,6 +2,8 @@ package compressors;
 
 import com.dabomstew.pkrandom.FileFunctions;
 
+import java.nio.ByteBuffer;
+
 //MODIFIED DSDECMP-JAVA SOURCE FOR RANDOMIZER'S NEEDS
 //License is below
 
@@ -32,33 +34,77 @@ public class DSDecmp {
     }
 
     public static byte[] Decompress(byte[] data, int offset) {
-        switch (data[offset] & 0xFF) {
-        case 0x10:
-            return decompress10LZ(data, offset);
-        case 0x11:
-            return decompress11LZ(data, offset);
-        default:
+        return Decompress(data, offset, Integer.MAX_VALUE);
+    }
+
+    // Decompresses at most maxLength bytes, for when only the start of the data is needed
+    public static byte[] Decompress(byte[] data, int offset, int maxLength) {
+        int length = getDecompressedLength(data, offset);
+        if (length < 0) {
             return null;
         }
+        byte[] outData = new byte[Math.min(length, maxLength)];
+        decompress(data, offset, outData, 0, outData.length);
+        return outData;
     }
 
-    private static byte[] decompress10LZ(byte[] data, int offset) {
-        offset++;
-        int length = (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16);
-        offset += 3;
+    // Returns the size of the data once decompressed, or -1 if it isn't in a supported format
+    public static int getDecompressedLength(byte[] data, int offset) {
+        int type = data[offset] & 0xFF;
+        if (type != 0x10 && type != 0x11) {
+            return -1;
+        }
+        int length = (data[offset + 1] & 0xFF) | ((data[offset + 2] & 0xFF) << 8) | ((data[offset + 3] & 0xFF) << 16);
         if (length == 0) {
-            length = FileFunctions.readFullIntBigEndian(data, offset);
-            offset += 4;
+            length = FileFunctions.readFullIntBigEndian(data, offset + 4);
+        }
+        return length;
+    }
+
+    // Decompresses into out, starting at outOffset, stopping after maxLength bytes if the data would
+    // be longer than that. out must have room for however many bytes that is.
+    // Returns the number of bytes written, or -1 if the data isn't in a supported format.
+    public static int decompress(byte[] data, int offset, byte[] out, int outOffset, int maxLength) {
+        int length = getDecompressedLength(data, offset);
+        if (length < 0) {
+            return -1;
+        }
+        int headerLength = (data[offset + 1] | data[offset + 2] | data[offset + 3]) == 0 ? 8 : 4;
+        int outLength = Math.min(length, maxLength);
+        if ((data[offset] & 0xFF) == 0x10) {
+            decompress10LZ(data, offset + headerLength, out, outOffset, outOffset + outLength);
+        } else {
+            decompress11LZ(data, offset + headerLength, out, outOffset, outOffset + outLength);
         }
+        return outLength;
+    }
+
+    // Same as above, writing at the buffer's position and advancing it past the decompressed data
+    public static int decompress(byte[] data, int offset, ByteBuffer out, int maxLength) {
+        int length = getDecompressedLength(data, offset);
+        if (length < 0) {
+            return -1;
+        }
+        int outLength = Math.min(Math.min(length, maxLength), out.remaining());
+        if (out.hasArray()) {
+            decompress(data, offset, out.array(), out.arrayOffset() + out.position(), outLength);
+        } else {
+            byte[] temp = new byte[outLength];
+            decompress(data, offset, temp, 0, outLength);
+            out.duplicate().put(temp);
+        }
+        out.position(out.position() + outLength);
+        return outLength;
+    }
 
-        byte[] outData = new byte[length];
-        int curr_size = 0;
+    private static void decompress10LZ(byte[] data, int offset, byte[] outData, int start, int end) {
+        int curr_size = start;
         int flags;
         boolean flag;
-        int disp, n, b, cdest;
-        while (curr_size < outData.length) {
+        int disp, n, b;
+        while (curr_size < end) {
             flags = data[offset++] & 0xFF;
-            for (int i = 0; i < 8; i++) {
+            for (int i = 0; i < 8 && curr_size < end; i++) {
                 flag = (flags & (0x80 >> i)) > 0;
                 if (flag) {
                     b = data[offset++] & 0xFF;
@@ -66,51 +112,26 @@ public class DSDecmp {
                     disp = (b & 0x0F) << 8;
                     disp |= data[offset++] & 0xFF;
                     n += 3;
-                    cdest = curr_size;
-                    if (disp > curr_size)
+                    if (disp >= curr_size - start)
                         throw new ArrayIndexOutOfBoundsException("Cannot go back more than already written");
-                    for (int j = 0; j < n; j++)
-                        outData[curr_size++] = outData[cdest - disp - 1 + j];
-
-                    if (curr_size > outData.length)
-                        break;
+                    curr_size = copyBack(outData, curr_size, disp + 1, Math.min(n, end - curr_size));
                 } else {
-                    b = data[offset++] & 0xFF;
-                    try {
-                        outData[curr_size++] = (byte) b;
-                    } catch (ArrayIndexOutOfBoundsException ex) {
-                        if (b == 0)
-                            break;
-                    }
-
-                    if (curr_size > outData.length)
-                        break;
+                    outData[curr_size++] = data[offset++];
                 }
             }
         }
-        return outData;
     }
 
-    private static byte[] decompress11LZ(byte[] data, int offset) {
-        offset++;
-        int length = (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16);
-        offset += 3;
-        if (length == 0) {
-            length = FileFunctions.readFullIntBigEndian(data, offset);
-            offset += 4;
-        }
-
-        byte[] outData = new byte[length];
-
-        int curr_size = 0;
+    private static void decompress11LZ(byte[] data, int offset, byte[] outData, int start, int end) {
+        int curr_size = start;
         int flags;
         boolean flag;
-        int b1, bt, b2, b3, len, disp, cdest;
+        int b1, bt, b2, b3, len, disp;
 
-        while (curr_size < outData.length) {
+        while (curr_size < end) {
             flags = data[offset++] & 0xFF;
 
-            for (int i = 0; i < 8 && curr_size < outData.length; i++) {
+            for (int i = 0; i < 8 && curr_size < end; i++) {
                 flag = (flags & (0x80 >> i)) > 0;
                 if (flag) {
                     b1 = data[offset++] & 0xFF;
@@ -165,26 +186,29 @@ public class DSDecmp {
                         break;
                     }
 
-                    if (disp > curr_size)
+                    if (disp >= curr_size - start)
                         throw new ArrayIndexOutOfBoundsException("Cannot go back more than already written");
 
-                    cdest = curr_size;
-
-                    for (int j = 0; j < len && curr_size < outData.length; j++)
-                        outData[curr_size++] = outData[cdest - disp - 1 + j];
-
-                    if (curr_size > outData.length)
-                        break;
+                    curr_size = copyBack(outData, curr_size, disp + 1, Math.min(len, end - curr_size));
                 } else {
                     outData[curr_size++] = data[offset++];
-
-                    if (curr_size > outData.length)
-                        break;
                 }
             }
 
         }
-        return outData;
+    }
+
+    // Copies len bytes from distance bytes back. When the two overlap, the bytes being copied repeat
+    // every distance bytes, so each copy can take twice as much from the same source as the last.
+    private static int copyBack(byte[] outData, int dest, int distance, int len) {
+        int src = dest - distance;
+        while (len > 0) {
+            int chunk = Math.min(len, dest - src);
+            System.arraycopy(outData, src, outData, dest, chunk);
+            dest += chunk;
+            len -= chunk;
+        }
+        return dest;
     }
 
 }
@@ -42,6 +42,7 @@ public class Gen1Decmp {
     private byte[] data;
     private int sizex, sizey, size;
     private int ramorder;
+    private boolean transposePending;
 
     public Gen1Decmp(byte[] input, int baseOffset) {
         this(input, baseOffset, false, true);
@@ -74,8 +75,6 @@ public class Gen1Decmp {
         }
         fillram(rams, r2);
 
-        rams[0] = this.bitgroups_to_bytes(rams[0]);
-        rams[1] = this.bitgroups_to_bytes(rams[1]);
 
         if (mode == 0) {
             this.decode(rams[0]);
@@ -107,31 +106,46 @@ public class Gen1Decmp {
 
     }
 
+    // The tiles are only actually moved once the data is asked for, so that getFlattenedData
+    // can do it at the same time as flattening
     public void transpose() {
         if (data == null) {
             return;
         }
-        int tiles = data.length / 16;
-        int width = this.sizex / tilesize;
-        int height = this.sizey;
-
-        byte[] newData = new byte[data.length];
-        for (int tile = 0; tile < tiles; tile++) {
-            int oldTileX = tile % width;
-            int oldTileY = tile / width;
-            int newTileNum = oldTileX * height + oldTileY;
-            System.arraycopy(data, tile * 16, newData, newTileNum * 16, 16);
+        if (transposePending) {
+            // Each call still moves the tiles, which two calls in a row don't simply undo
+            getData();
         }
-        data = newData;
-
+        transposePending = true;
     }
 
     public byte[] getData() {
+        if (transposePending) {
+            byte[] newData = new byte[data.length];
+            int tiles = data.length / 16;
+            for (int tile = 0; tile < tiles; tile++) {
+                System.arraycopy(data, tile * 16, newData, transposedTile(tile) * 16, 16);
+            }
+            data = newData;
+            transposePending = false;
+        }
         return data;
     }
 
     public byte[] getFlattenedData() {
-        return flatten(data);
+        byte[] strips = new byte[data.length * 4];
+        int tiles = data.length / 16;
+        for (int tile = 0; tile < tiles; tile++) {
+            int newTile = transposePending ? transposedTile(tile) : tile;
+            flatten(data, tile * 16, strips, newTile * 64, 16);
+        }
+        return strips;
+    }
+
+    private int transposedTile(int tile) {
+        int width = this.sizex / tilesize;
+        int height = this.sizey;
+        return (tile % width) * height + tile / width;
     }
 
     public int getWidth() {
@@ -155,19 +169,18 @@ public class Gen1Decmp {
             }
             rleMode = !rleMode;
         }
-        rams[rOffset] = deinterlace_bitgroups(rams[rOffset]);
+        rams[rOffset] = deinterlace_to_bytes(rams[rOffset]);
     }
 
-    private byte[] deinterlace_bitgroups(byte[] bits) {
-        byte[] l = new byte[bits.length];
+    // Deinterlaces the bit groups and packs each run of 4 into a byte in one go
+    private byte[] deinterlace_to_bytes(byte[] bits) {
+        byte[] l = new byte[bits.length / 4];
         int offs = 0;
         for (int y = 0; y < this.sizey; y++) {
             for (int x = 0; x < this.sizex; x++) {
                 int i = 4 * y * this.sizex + x;
-                for (int j = 0; j < 4; j++) {
-                    l[offs++] = bits[i];
-                    i += this.sizex;
-                }
+                l[offs++] = (byte) ((bits[i] << 6) | (bits[i + this.sizex] << 4) | (bits[i + 2 * this.sizex] << 2)
+                        | bits[i + 3 * this.sizex]);
             }
         }
         return l;
@@ -215,13 +228,7 @@ public class Gen1Decmp {
     }
 
     private int readint(BitStream strm, int count) {
-        int n = 0;
-        while (count > 0) {
-            n <<= 1;
-            n |= strm.next();
-            count -= 1;
-        }
-        return n;
+        return strm.next(count);
     }
 
     private byte[] bitgroups_to_bytes(byte[] bits) {
@@ -281,16 +288,13 @@ public class Gen1Decmp {
         }
     }
 
+    // Reads bits most significant first. Whole bytes are shifted into a 64-bit buffer at a time,
+    // so reading a field of several bits doesn't go back to the array for each one.
     private static class BitStream {
         private byte[] data;
         private int offset;
+        private long buffer;
         private int bitsLeft;
-        private int bufVal;
-
-        private static final int bmask[] = { 0x00, 0x01, 0x03, 0x07, 0x0f, 0x1f, 0x3f, 0x7f, 0xff, 0x1ff, 0x3ff, 0x7ff,
-                0xfff, 0x1fff, 0x3fff, 0x7fff, 0xffff, 0x1ffff, 0x3ffff, 0x7ffff, 0xfffff, 0x1fffff, 0x3fffff,
-                0x7fffff, 0xffffff, 0x1ffffff, 0x3ffffff, 0x7ffffff, 0xfffffff, 0x1fffffff, 0x3fffffff, 0x7fffffff,
-                0xffffffff };
 
         public BitStream(byte[] data) {
             this(data, 0);
@@ -298,41 +302,45 @@ public class Gen1Decmp {
 
         public BitStream(byte[] data, int baseOffset) {
             this.data = data;
-            this.offset = baseOffset - 1;
+            this.offset = baseOffset;
+            this.buffer = 0;
             this.bitsLeft = 0;
-            this.bufVal = -1;
         }
 
         public int next() {
-            if (bitsLeft == 0) {
-                offset++;
-                bufVal = data[offset] & 0xFF;
-                if (offset >= data.length) {
-                    return -1;
+            return next(1);
+        }
+
+        // Reads count (at most 32) bits as an unsigned number
+        public int next(int count) {
+            if (bitsLeft < count) {
+                refill();
+                if (bitsLeft < count) {
+                    throw new ArrayIndexOutOfBoundsException("Ran out of compressed data");
                 }
-                bitsLeft = 8;
             }
+            bitsLeft -= count;
+            return (int) ((buffer >>> bitsLeft) & ((1L << count) - 1));
+        }
 
-            int retval = bufVal >> (bitsLeft - 1);
-            bufVal &= bmask[bitsLeft - 1];
-            bitsLeft--;
-
-            return retval;
+        private void refill() {
+            while (bitsLeft <= 56 && offset < data.length) {
+                buffer = (buffer << 8) | (data[offset++] & 0xFF);
+                bitsLeft += 8;
+            }
         }
     }
 
-    private static byte[] flatten(byte[] planar) {
-        byte[] strips = new byte[planar.length * 4];
-        for (int j = 0; j < planar.length / 2; j++) {
-            int bottom = planar[j * 2] & 0xFF;
-            int top = planar[j * 2 + 1] & 0xFF;
-            byte[] strip = new byte[8];
+    // Each pair of bytes (low bits and high bits of a row of 8 pixels) becomes 8 bytes of pixel values
+    private static void flatten(byte[] planar, int offset, byte[] strips, int stripOffset, int length) {
+        for (int j = 0; j < length / 2; j++) {
+            int bottom = planar[offset + j * 2] & 0xFF;
+            int top = planar[offset + j * 2 + 1] & 0xFF;
+            int out = stripOffset + j * 8;
             for (int i = 7; i >= 0; i--) {
-                strip[7 - i] = (byte) (((bottom >>> i) & 1) + ((top * 2 >>> i) & 2));
+                strips[out + 7 - i] = (byte) (((bottom >>> i) & 1) + ((top * 2 >>> i) & 2));
             }
-            System.arraycopy(strip, 0, strips, j * 8, 8);
         }
-        return strips;
     }
 
 }
@@ -1,5 +1,7 @@
 package compressors;
 
+import java.util.Arrays;
+
 /**
  * Pokemon Gen 2 sprite decompressor Source:
  * https://github.com/pret/pokemon-reverse-engineering-tools/blob/master/pokemontools/lz.py 
@@ -19,6 +21,9 @@ public class Gen2Decmp {
     private int cmd;
     private int len;
     private int offset;
+    private int tilesWide;
+    private int tilesHigh;
+    private boolean cut;
 
     private static int[] bit_flipped;
 
@@ -34,37 +39,56 @@ public class Gen2Decmp {
     public Gen2Decmp(byte[] input, int baseOffset, int tilesWide, int tilesHigh) {
         this.data = input;
         this.address = baseOffset;
-        decompress();
-        cutAndTranspose(tilesWide, tilesHigh);
+        this.tilesWide = tilesWide;
+        this.tilesHigh = tilesHigh;
+        decompress(tilesWide * tilesHigh * 16);
     }
 
     public byte[] getData() {
+        if (!cut) {
+            cutAndTranspose();
+        }
         return output;
     }
 
+    // Cuts, transposes and flattens in one pass, straight from the decompressed data
     public byte[] getFlattenedData() {
-        return flatten(output);
-    }
-
-    private void cutAndTranspose(int width, int height) {
-        if (output == null) {
-            return;
+        if (cut) {
+            return flatten(output);
+        }
+        int tiles = checkedTileCount();
+        byte[] strips = new byte[tiles * 64];
+        for (int tile = 0; tile < tiles; tile++) {
+            flatten(output, tile * 16, strips, transposedTile(tile) * 64, 16);
         }
-        int tiles = width * height;
+        return strips;
+    }
 
-        byte[] newData = new byte[width * height * 16];
+    private void cutAndTranspose() {
+        int tiles = checkedTileCount();
+        byte[] newData = new byte[tiles * 16];
         for (int tile = 0; tile < tiles; tile++) {
-            int oldTileX = tile % width;
-            int oldTileY = tile / width;
-            int newTileNum = oldTileX * height + oldTileY;
-            System.arraycopy(output, tile * 16, newData, newTileNum * 16, 16);
+            System.arraycopy(output, tile * 16, newData, transposedTile(tile) * 16, 16);
         }
         output = newData;
+        cut = true;
+    }
 
+    private int checkedTileCount() {
+        int tiles = tilesWide * tilesHigh;
+        if (tiles * 16 > out_idx) {
+            throw new ArrayIndexOutOfBoundsException("Decompressed picture is smaller than its dimensions");
+        }
+        return tiles;
     }
 
-    private void decompress() {
-        output = new byte[INITIAL_BUF_SIZE];
+    private int transposedTile(int tile) {
+        return (tile % tilesWide) * tilesHigh + tile / tilesWide;
+    }
+
+    private void decompress(int expectedSize) {
+        // Start with room for the whole picture, so the buffer normally never needs to grow
+        output = new byte[Math.max(INITIAL_BUF_SIZE, expectedSize)];
         while (true) {
             if (this.peek() == LZ_END) {
                 this.next();
@@ -94,16 +118,15 @@ public class Gen2Decmp {
                 break;
             case 1:
                 // Iterate
-                byte repe = (byte) next();
-                for (int i = 0; i < len; i++) {
-                    output[out_idx++] = repe;
-                }
+                Arrays.fill(output, out_idx, out_idx + len, (byte) next());
+                out_idx += len;
                 break;
             case 2:
                 // Alternate
-                byte[] alts = { (byte) next(), (byte) next() };
+                byte alt0 = (byte) next();
+                byte alt1 = (byte) next();
                 for (int i = 0; i < len; i++) {
-                    output[out_idx++] = alts[i & 1];
+                    output[out_idx++] = (i & 1) == 0 ? alt0 : alt1;
                 }
                 break;
             case 3:
@@ -124,10 +147,6 @@ public class Gen2Decmp {
             }
         }
 
-        byte[] finalOutput = new byte[out_idx];
-        System.arraycopy(output, 0, finalOutput, 0, out_idx);
-        output = finalOutput;
-
     }
 
     private void repeat() {
@@ -136,6 +155,12 @@ public class Gen2Decmp {
 
     private void repeat(int direction, int[] table) {
         get_offset();
+        if (direction == 1 && table == null && offset + len <= out_idx) {
+            // Plain copy of data that's already all there
+            System.arraycopy(output, offset, output, out_idx, len);
+            out_idx += len;
+            return;
+        }
         for (int i = 0; i < len; i++) {
             int value = output[offset + i * direction] & 0xFF;
             output[out_idx++] = (byte) ((table == null) ? value : table[value]);
@@ -169,16 +194,20 @@ public class Gen2Decmp {
 
     private static byte[] flatten(byte[] planar) {
         byte[] strips = new byte[planar.length * 4];
-        for (int j = 0; j < planar.length / 2; j++) {
-            int bottom = planar[j * 2] & 0xFF;
-            int top = planar[j * 2 + 1] & 0xFF;
-            byte[] strip = new byte[8];
+        flatten(planar, 0, strips, 0, planar.length);
+        return strips;
+    }
+
+    // Each pair of bytes (low bits and high bits of a row of 8 pixels) becomes 8 bytes of pixel values
+    private static void flatten(byte[] planar, int offset, byte[] strips, int stripOffset, int length) {
+        for (int j = 0; j < length / 2; j++) {
+            int bottom = planar[offset + j * 2] & 0xFF;
+            int top = planar[offset + j * 2 + 1] & 0xFF;
+            int out = stripOffset + j * 8;
             for (int i = 7; i >= 0; i--) {
-                strip[7 - i] = (byte) (((bottom >>> i) & 1) + ((top * 2 >>> i) & 2));
+                strips[out + 7 - i] = (byte) (((bottom >>> i) & 1) + ((top * 2 >>> i) & 2));
             }
-            System.arraycopy(strip, 0, strips, j * 8, 8);
         }
-        return strips;
     }
 
 }
@@ -52,7 +52,15 @@ public class BLZCoder {
 
     private static final int RAW_MAXIM = 0x00FFFFFF;
 
-    private static final int BLZ_MAXIM = 0x01400000;
+    private static final int HASH_BITS = 16;
+    private static final int HASH_MASK = (1 << HASH_BITS) - 1;
+
+    // Scratch buffers for inputs up to this size are kept around per thread and reused. The encoders
+    // run on the common pool's threads, which live as long as the program does, and their buffers
+    // take about 14 bytes per input byte, so larger inputs get buffers that are dropped afterwards.
+    private static final int SCRATCH_RETAIN_LIMIT = 0x10000;
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
 
     private boolean arm9;
 
@@ -106,7 +114,7 @@ public class BLZCoder {
     private void Usage() {
         EXIT("Usage: BLZ command filename [filename [...]]\n" + "\n" + "command:\n"
                 + "  -d ....... decode 'filename'\n" + "  -en[9] ... encode 'filename', normal mode\n"
-                + "  -eo[9] ... encode 'filename', optimal mode (LZ-CUE)\n" + "\n"
+                + "  -eo[9] ... encode 'filename', optimal mode\n" + "\n"
                 + "* '9' compress an ARM9 file with 0x4000 bytes decoded\n"
                 + "* multiple filenames and wildcards are permitted\n"
                 + "* the original file is overwritten with the new file\n"
@@ -121,19 +129,15 @@ public class BLZCoder {
         System.out.print("\n");
     }
 
-    private void EXIT(String text) {
+    private static void EXIT(String text) {
         System.out.print(text);
         System.exit(0);
     }
 
-    private void Save(String filename, int[] buffer, int length) {
+    private void Save(String filename, byte[] buffer) {
         try {
             FileOutputStream fos = new FileOutputStream(filename);
-            byte[] write = new byte[length];
-            for (int i = 0; i < length; i++) {
-                write[i] = (byte) buffer[i];
-            }
-            fos.write(write);
+            fos.write(buffer);
             fos.close();
         } catch (IOException e) {
             EXIT("\nFile write error\n");
@@ -146,9 +150,23 @@ public class BLZCoder {
             System.out.printf("- decoding '%s'", filename);
             long startTime = System.currentTimeMillis();
             byte[] buf = FileFunctions.readFileFullyIntoBuffer(filename);
-            BLZResult result = BLZ_Decode(buf);
+            byte[] result = decodeBLZ(buf);
             if (result != null)
-                Save(filename, result.buffer, result.length);
+                Save(filename, result);
+            System.out.print(" - done, time=" + (System.currentTimeMillis() - startTime) + "ms");
+            System.out.print("\n");
+        } catch (IOException e) {
+            EXIT("\nFile read error\n");
+        }
+    }
+
+    private void BLZ_Encode(String filename, int mode) {
+        try {
+            System.out.printf("- encoding '%s'", filename);
+            long startTime = System.currentTimeMillis();
+            byte[] buf = FileFunctions.readFileFullyIntoBuffer(filename);
+            byte[] result = encodeBLZ(buf, arm9, mode == BLZ_BEST);
+            Save(filename, result);
             System.out.print(" - done, time=" + (System.currentTimeMillis() - startTime) + "ms");
             System.out.print("\n");
         } catch (IOException e) {
@@ -158,82 +176,83 @@ public class BLZCoder {
 
     public byte[] BLZ_DecodePub(byte[] data, String reference) {
         if (reference.equals("GARC")) {
-            return LZSS_Decode(data);
+            return decodeLZ11(data);
         } else {
-            BLZResult result = BLZ_Decode(data);
-            if (result != null) {
-                byte[] retbuf = new byte[result.length];
-                for (int i = 0; i < result.length; i++) {
-                    retbuf[i] = (byte) result.buffer[i];
-                }
-                return retbuf;
-            } else {
-                return null;
-            }
+            return decodeBLZ(data);
         }
     }
 
-    private BLZResult BLZ_Decode(byte[] data) {
-        int[] pak_buffer, raw_buffer;
-        int pak, raw, pak_end, raw_end;
-        int pak_len, raw_len, len, pos, inc_len, hdr_len, enc_len, dec_len;
-        int flags = 0, mask;
-
-        pak_buffer = prepareData(data);
-        pak_len = pak_buffer.length - 3;
-
-        inc_len = readUnsigned(pak_buffer, pak_len - 4);
-        if (inc_len < 1) {
-            System.out.print(", WARNING: not coded file!");
-            enc_len = 0;
-            dec_len = pak_len;
-            pak_len = 0;
-            raw_len = dec_len;
+    public byte[] BLZ_EncodePub(byte[] data, boolean arm9, boolean best, String reference) {
+        if (reference.equals("GARC")) {
+            return encodeLZ11(data);
         } else {
-            if (pak_len < 8) {
-                EXIT("\nFile has a bad header\n");
-                return null;
-            }
-            hdr_len = pak_buffer[pak_len - 5];
-            if (hdr_len < 8 || hdr_len > 0xB) {
-                EXIT("\nBad header length\n");
-                return null;
-            }
-            if (pak_len <= hdr_len) {
-                EXIT("\nBad length\n");
-                return null;
-            }
-            enc_len = readUnsigned(pak_buffer, pak_len - 8) & 0x00FFFFFF;
-            dec_len = pak_len - enc_len;
-            pak_len = enc_len - hdr_len;
-            raw_len = dec_len + enc_len + inc_len;
-            if (raw_len > RAW_MAXIM) {
-                EXIT("\nBad decoded length\n");
-                return null;
-            }
+            System.out.printf("- encoding '%s' (memory)", reference);
+            long startTime = System.currentTimeMillis();
+            byte[] result = encodeBLZ(data, arm9, best);
+            System.out.print(" - done, time=" + (System.currentTimeMillis() - startTime) + "ms");
+            System.out.print("\n");
+            return result;
         }
+    }
 
-        raw_buffer = new int[raw_len];
+    /*
+     * Stateless API. These work directly on byte arrays and never modify their input, so they are
+     * safe to call from multiple threads at once. Working memory is reused per thread.
+     */
 
-        pak = 0;
-        raw = 0;
-        pak_end = dec_len + pak_len;
-        raw_end = raw_len;
+    public static byte[] decodeBLZ(byte[] data) {
+        return decodeBLZ(data, 0, data.length);
+    }
 
-        for (len = 0; len < dec_len; len++) {
-            raw_buffer[raw++] = pak_buffer[pak++];
+    public static byte[] decodeBLZ(byte[] data, int offset, int length) {
+        int pak_len, raw_len, inc_len, hdr_len, enc_len, dec_len;
+
+        pak_len = length;
+
+        inc_len = readUnsigned(data, offset + pak_len - 4);
+        if (inc_len < 1) {
+            System.out.print(", WARNING: not coded file!");
+            return Arrays.copyOfRange(data, offset, offset + pak_len);
+        }
+        if (pak_len < 8) {
+            EXIT("\nFile has a bad header\n");
+            return null;
+        }
+        hdr_len = data[offset + pak_len - 5] & 0xFF;
+        if (hdr_len < 8 || hdr_len > 0xB) {
+            EXIT("\nBad header length\n");
+            return null;
+        }
+        if (pak_len <= hdr_len) {
+            EXIT("\nBad length\n");
+            return null;
+        }
+        enc_len = readUnsigned(data, offset + pak_len - 8) & 0x00FFFFFF;
+        dec_len = pak_len - enc_len;
+        pak_len = enc_len - hdr_len;
+        raw_len = dec_len + enc_len + inc_len;
+        if (raw_len > RAW_MAXIM) {
+            EXIT("\nBad decoded length\n");
+            return null;
         }
 
-        BLZ_Invert(pak_buffer, dec_len, pak_len);
+        byte[] raw_buffer = new byte[raw_len];
+        System.arraycopy(data, offset, raw_buffer, 0, dec_len);
 
-        mask = 0;
+        // The encoded part is stored backwards. Rather than reversing it and the output like the
+        // reference implementation does, read the input from the end and fill the output from the end.
+        int pak = offset + dec_len + pak_len - 1;
+        int pak_end = offset + dec_len - 1;
+        int raw = raw_len - 1;
+        int raw_end = dec_len - 1;
+        int flags = 0, mask = 0;
 
-        while (raw < raw_end) {
+        while (raw > raw_end) {
             if ((mask = (mask >>> BLZ_SHIFT)) == 0) {
                 if (pak == pak_end) {
                     break;
                 }
-                flags = pak_buffer[pak++];
+                flags = data[pak--] & 0xFF;
                 mask = BLZ_MASK;
             }
 
@@ -241,41 +260,171 @@ public class BLZCoder {
                 if (pak == pak_end) {
                     break;
                 }
-                raw_buffer[raw++] = pak_buffer[pak++];
+                raw_buffer[raw--] = data[pak--];
             } else {
-                if ((pak + 1) >= pak_end) {
+                if ((pak - 1) <= pak_end) {
                     break;
                 }
-                pos = pak_buffer[pak++] << 8;
-                pos |= pak_buffer[pak++];
-                len = (pos >>> 12) + BLZ_THRESHOLD + 1;
-                if (raw + len > raw_end) {
+                int pos = (data[pak--] & 0xFF) << 8;
+                pos |= data[pak--] & 0xFF;
+                int len = (pos >>> 12) + BLZ_THRESHOLD + 1;
+                if (raw - len < raw_end) {
                     System.out.print(", WARNING: wrong decoded length!");
-                    len = raw_end - raw;
+                    len = raw - raw_end;
                 }
                 pos = (pos & 0xFFF) + 3;
                 while ((len--) > 0) {
-                    int charHere = raw_buffer[raw - pos];
-                    raw_buffer[raw++] = charHere;
+                    int src = raw + pos;
+                    // Only malformed data refers back past the encoded part, into the stored header
+                    raw_buffer[raw--] = src < raw_len ? raw_buffer[src] : raw_buffer[dec_len + raw_len - 1 - src];
                 }
             }
         }
 
-        BLZ_Invert(raw_buffer, dec_len, raw_len - dec_len);
-
-        raw_len = raw;
-
         if (raw != raw_end) {
             System.out.print(", WARNING: unexpected end of encoded file!");
+            // Same as the reference implementation: keep as many bytes as were actually decoded
+            return Arrays.copyOf(raw_buffer, dec_len + (raw_len - 1 - raw));
+        }
+
+        return raw_buffer;
+    }
+
+    public static byte[] encodeBLZ(byte[] data, boolean arm9, boolean best) {
+        return encodeBLZ(data, 0, data.length, arm9, best);
+    }
+
+    public static byte[] encodeBLZ(byte[] data, int offset, int length, boolean arm9, boolean best) {
+        Scratch s = length <= SCRATCH_RETAIN_LIMIT ? scratch.get() : new Scratch();
+        s.ensureCapacity(length);
+        // Bottom LZ works from the end of the file backwards, so work on a reversed copy of the input
+        byte[] raw_buffer = s.raw;
+        for (int i = 0; i < length; i++) {
+            raw_buffer[i] = data[offset + length - 1 - i];
+        }
+        raw_buffer[length] = 0;
+        raw_buffer[length + 1] = 0;
+        raw_buffer[length + 2] = 0;
+        return BLZ_Code(data, offset, raw_buffer, length, arm9, best ? BLZ_BEST : BLZ_NORMAL, s);
+    }
+
+    public static byte[] decodeLZ11(byte[] data) {
+        return LZSS_Decode(data);
+    }
+
+    public static byte[] encodeLZ11(byte[] data) {
+        return LZSS_Encode(data);
+    }
+
+    private static byte[] BLZ_Code(byte[] data, int offset, byte[] raw_buffer, int raw_len, boolean arm9, int best,
+                                   Scratch s) {
+        byte[] pak_buffer;
+        int pak, raw, raw_end, flg = 0;
+        int inc_len, hdr_len, enc_len, len;
+        int len_best, pos_best = 0;
+        int pak_tmp, raw_tmp, raw_new;
+        int mask;
+
+        pak_tmp = 0;
+        raw_tmp = raw_len;
+
+        pak_buffer = s.pak;
+
+        raw_new = raw_len;
+
+        if (arm9) {
+            // We don't do any of the checks here
+            // Presume that we actually are using an arm9
+            raw_new -= 0x4000;
+        }
+
+        pak = 0;
+        raw = 0;
+        raw_end = raw_new;
+
+        int[] prev = buildHashChains(raw_buffer, raw_end, s);
+        int[] parse = null;
+        if (best == BLZ_BEST) {
+            // Only encode up to wherever leaving the rest of the data raw starts paying off
+            raw_end = optimalParse(raw_buffer, raw_end, prev, s);
+            parse = s.cost;
         }
 
-        return new BLZResult(raw_buffer, raw_len);
+        mask = 0;
+        while (raw < raw_end) {
+            if ((mask = (mask >>> BLZ_SHIFT)) == 0) {
+                pak_buffer[(flg = pak++)] = 0;
+                mask = BLZ_MASK;
+            }
+
+            if (best == BLZ_BEST) {
+                int step = parse[raw];
+                len_best = step >>> 16;
+                pos_best = step & 0xFFFF;
+            } else {
+                int sl1 = SEARCH(pos_best, raw_buffer, raw, raw_end, prev);
+                len_best = sl1 >>> 16;
+                pos_best = sl1 & 0xFFFF;
+            }
+            pak_buffer[flg] = (byte) (pak_buffer[flg] << 1);
+            if (len_best > BLZ_THRESHOLD) {
+                raw += len_best;
+                pak_buffer[flg] |= 1;
+                pak_buffer[pak++] = (byte) (((len_best - (BLZ_THRESHOLD + 1)) << 4) | ((pos_best - 3) >>> 8));
+                pak_buffer[pak++] = (byte) ((pos_best - 3) & 0xFF);
+            } else {
+                pak_buffer[pak++] = raw_buffer[raw++];
+            }
+
+            if (pak + raw_len - raw < pak_tmp + raw_tmp) {
+                pak_tmp = pak;
+                raw_tmp = raw_len - raw;
+            }
+        }
 
+        while ((mask > 0) && (mask != 1)) {
+            mask = (mask >>> BLZ_SHIFT);
+            pak_buffer[flg] = (byte) (pak_buffer[flg] << 1);
+        }
+
+        byte[] result;
+        if (pak_tmp == 0 || (raw_len + 4 < ((pak_tmp + raw_tmp + 3) & 0xFFFFFFFC) + 8)) {
+            // Not worth compressing: store the data as-is, followed by an empty footer
+            result = new byte[((raw_len + 3) & 0xFFFFFFFC) + 4];
+            System.arraycopy(data, offset, result, 0, raw_len);
+        } else {
+            hdr_len = 8;
+            while (((raw_tmp + pak_tmp + hdr_len - 8) & 3) > 0) {
+                hdr_len++;
+            }
+            result = new byte[raw_tmp + pak_tmp + hdr_len];
+
+            // The untouched start of the file, then the encoded part, which was built from the end of
+            // the file backwards and so is stored reversed
+            System.arraycopy(data, offset, result, 0, raw_tmp);
+            pak = raw_tmp;
+            for (len = pak_tmp - 1; len >= 0; len--) {
+                result[pak++] = pak_buffer[len];
+            }
+
+            enc_len = pak_tmp;
+            inc_len = raw_len - pak_tmp - raw_tmp;
+
+            while ((pak & 3) > 0) {
+                result[pak++] = (byte) 0xFF;
+            }
+
+            writeUnsigned(result, pak, enc_len + hdr_len);
+            pak += 3;
+            result[pak++] = (byte) hdr_len;
+            writeUnsigned(result, pak, inc_len - hdr_len);
+        }
+        return result;
     }
 
     // LZSS Decoding ported to Java (based on pk3DS by Kaphotics and pokemon-x-y-icons by CatTrinket)
 
-    private byte[] LZSS_Decode(byte[] data) {
+    private static byte[] LZSS_Decode(byte[] data) {
         ByteBuffer buf = ByteBuffer.wrap(data);
         buf.order(ByteOrder.LITTLE_ENDIAN);
         if (buf.get(0) != 0x11) {
@@ -370,367 +519,140 @@ public class BLZCoder {
         return outBuf.array();
     }
 
-    private int[] prepareData(byte[] data) {
-        int fs = data.length;
-        int[] fb = new int[fs + 3];
-        for (int i = 0; i < fs; i++) {
-            fb[i] = data[i] & 0xFF;
-        }
-        return fb;
-    }
-
-    private int readUnsigned(int[] buffer, int offset) {
-        return buffer[offset] | (buffer[offset + 1] << 8) | (buffer[offset + 2] << 16)
-                | ((buffer[offset + 3] & 0x7F) << 24);
-    }
-
-    private void writeUnsigned(int[] buffer, int offset, int value) {
-        buffer[offset] = value & 0xFF;
-        buffer[offset + 1] = (value >> 8) & 0xFF;
-        buffer[offset + 2] = (value >> 16) & 0xFF;
-        buffer[offset + 3] = (value >> 24) & 0x7F;
-    }
-
-    private int new_len;
-
-    private void BLZ_Encode(String filename, int mode) {
-        try {
-            System.out.printf("- encoding '%s'", filename);
-            long startTime = System.currentTimeMillis();
-            byte[] buf = FileFunctions.readFileFullyIntoBuffer(filename);
-            BLZResult result = BLZ_Encode(buf, mode);
-            if (result != null)
-                Save(filename, result.buffer, result.length);
-            System.out.print(" - done, time=" + (System.currentTimeMillis() - startTime) + "ms");
-            System.out.print("\n");
-        } catch (IOException e) {
-            EXIT("\nFile read error\n");
-        }
-    }
-
-    public byte[] BLZ_EncodePub(byte[] data, boolean arm9, boolean best, String reference) {
-        int mode = best ? BLZ_BEST : BLZ_NORMAL;
-        this.arm9 = arm9;
-        if (reference.equals("GARC")) {
-            return LZSS_Encode(data);
-        } else {
-            System.out.printf("- encoding '%s' (memory)", reference);
-            long startTime = System.currentTimeMillis();
-            BLZResult result = BLZ_Encode(data, mode);
-            System.out.print(" - done, time=" + (System.currentTimeMillis() - startTime) + "ms");
-            System.out.print("\n");
-            if (result != null) {
-                byte[] retbuf = new byte[result.length];
-                for (int i = 0; i < result.length; i++) {
-                    retbuf[i] = (byte) result.buffer[i];
-                }
-                return retbuf;
-            } else {
-                return null;
-            }
-        }
-    }
-
-    private BLZResult BLZ_Encode(byte[] data, int mode) {
-        int[] raw_buffer, pak_buffer, new_buffer;
-        int raw_len, pak_len;
-
-        new_len = 0;
-
-        raw_buffer = prepareData(data);
-        raw_len = raw_buffer.length - 3;
-
-        pak_buffer = null;
-        pak_len = BLZ_MAXIM + 1;
-
-        new_buffer = BLZ_Code(raw_buffer, raw_len, mode);
-
-        if (new_len < pak_len) {
-            pak_buffer = new_buffer;
-            pak_len = new_len;
-        }
-        return new BLZResult(pak_buffer, pak_len);
-    }
-
-    private int[] BLZ_Code(int[] raw_buffer, int raw_len, int best) {
-        int[] pak_buffer, tmp;
-        int pak, raw, raw_end, flg = 0;
-        int pak_len, inc_len, hdr_len, enc_len, len;
-        int len_best, pos_best = 0, len_next, pos_next = 0, len_post, pos_post = 0;
-        int pak_tmp, raw_tmp, raw_new;
-        int mask;
-
-        pak_tmp = 0;
-        raw_tmp = raw_len;
-
-        pak_len = raw_len + ((raw_len + 7) / 8) + 11;
-        pak_buffer = new int[pak_len];
-
-        raw_new = raw_len;
-
-        if (arm9) {
-            // We don't do any of the checks here
-            // Presume that we actually are using an arm9
-            raw_new -= 0x4000;
-        }
-
-        BLZ_Invert(raw_buffer, 0, raw_len);
-
-        pak = 0;
-        raw = 0;
-        raw_end = raw_new;
-
-        mask = 0;
-        while (raw < raw_end) {
-            if ((mask = (mask >>> BLZ_SHIFT)) == 0) {
-                pak_buffer[(flg = pak++)] = 0;
-                mask = BLZ_MASK;
-            }
-
-            SearchPair sl1 = SEARCH(pos_best, raw_buffer, raw, raw_end);
-            len_best = sl1.l;
-            pos_best = sl1.p;
-
-            // LZ-CUE optimization start
-            if (best == BLZ_BEST) {
-                if (len_best > BLZ_THRESHOLD) {
-                    if (raw + len_best < raw_end) {
-                        raw += len_best;
-                        SearchPair sl2 = SEARCH(pos_next, raw_buffer, raw, raw_end);
-                        len_next = sl2.l;
-                        pos_next = sl2.p;
-                        raw -= (len_best - 1);
-                        SearchPair sl3 = SEARCH(pos_post, raw_buffer, raw, raw_end);
-                        len_post = sl3.l;
-                        pos_post = sl3.p;
-                        raw--;
-
-                        if (len_next <= BLZ_THRESHOLD) {
-                            len_next = 1;
-                        }
-                        if (len_post <= BLZ_THRESHOLD) {
-                            len_post = 1;
-                        }
-                        if ((len_best + len_next) <= (1 + len_post)) {
-                            len_best = 1;
-                        }
-                    }
-                }
-            }
-            // LZ-CUE optimization end
-            pak_buffer[flg] = (pak_buffer[flg] << 1);
-            if (len_best > BLZ_THRESHOLD) {
-                raw += len_best;
-                pak_buffer[flg] |= 1;
-                pak_buffer[pak++] = ((len_best - (BLZ_THRESHOLD + 1)) << 4) | ((pos_best - 3) >>> 8);
-                pak_buffer[pak++] = (pos_best - 3) & 0xFF;
-            } else {
-                pak_buffer[pak++] = raw_buffer[raw++];
-            }
-
-            if (pak + raw_len - raw < pak_tmp + raw_tmp) {
-                pak_tmp = pak;
-                raw_tmp = raw_len - raw;
-            }
-        }
-
-        while ((mask > 0) && (mask != 1)) {
-            mask = (mask >>> BLZ_SHIFT);
-            pak_buffer[flg] = pak_buffer[flg] << 1;
-        }
-
-        pak_len = pak;
-
-        BLZ_Invert(raw_buffer, 0, raw_len);
-        BLZ_Invert(pak_buffer, 0, pak_len);
-
-        if (pak_tmp == 0 || (raw_len + 4 < ((pak_tmp + raw_tmp + 3) & 0xFFFFFFFC) + 8)) {
-            pak = 0;
-            raw = 0;
-            raw_end = raw_len;
-
-            while (raw < raw_end) {
-                pak_buffer[pak] = raw_buffer[raw];
-            }
-
-            while ((pak & 3) > 0) {
-                pak_buffer[pak++] = 0;
-            }
-
-            pak_buffer[pak++] = 0;
-            pak_buffer[pak++] = 0;
-            pak_buffer[pak++] = 0;
-            pak_buffer[pak++] = 0;
-        } else {
-            tmp = new int[raw_tmp + pak_tmp + 11];
-            for (len = 0; len < raw_tmp; len++) {
-                tmp[len] = raw_buffer[len];
-            }
-            for (len = 0; len < pak_tmp; len++) {
-                tmp[raw_tmp + len] = pak_buffer[len + pak_len - pak_tmp];
-            }
-
-            pak_buffer = tmp;
-
-            pak = raw_tmp + pak_tmp;
-
-            enc_len = pak_tmp;
-            hdr_len = 8;
-            inc_len = raw_len - pak_tmp - raw_tmp;
-
-            while ((pak & 3) > 0) {
-                pak_buffer[pak++] = 0xFF;
-                hdr_len++;
-            }
-
-            writeUnsigned(pak_buffer, pak, enc_len + hdr_len);
-            pak += 3;
-            pak_buffer[pak++] = hdr_len;
-            writeUnsigned(pak_buffer, pak, inc_len - hdr_len);
-            pak += 4;
-
-        }
-        new_len = pak;
-        return pak_buffer;
-    }
-
     // LZSS Encoding ported to Java (based on pk3DS by Kaphotics)
 
-    private byte[] LZSS_Encode(byte[] data) {
-        if (data.length > 0xFFFFFF) {
+    private static byte[] LZSS_Encode(byte[] data) {
+        int length = data.length;
+        if (length > 0xFFFFFF) {
             System.err.println("Encoding: Too much data");
             return null;
         }
 
-        ByteBuffer inBuf = ByteBuffer.wrap(data);
-        ByteBuffer outBuf = ByteBuffer.allocate(data.length + 8);
-        outBuf.order(ByteOrder.LITTLE_ENDIAN);
-        outBuf.put((byte)0x11);
-        outBuf.putInt(data.length);
-        outBuf.position(outBuf.position()-1); // Go back one byte since length should only be 3 bytes
-        if (data.length == 0) {
-            outBuf.putInt(0);
-            return Arrays.copyOfRange(outBuf.array(),0,outBuf.position());
+        // Worst case is every byte stored as a literal, plus a flag byte for every 8 of them.
+        // Empty data gets the 4 byte extended length field instead, which is also 0.
+        byte[] out = new byte[4 + (length == 0 ? 4 : length + (length + 7) / 8)];
+        out[0] = 0x11;
+        out[1] = (byte) length;
+        out[2] = (byte) (length >>> 8);
+        out[3] = (byte) (length >>> 16);
+        if (length == 0) {
+            return out;
         }
 
-        ByteBuffer blockBuf = ByteBuffer.allocate((8 * 4) + 1);
-        blockBuf.put((byte)0);
-        int bufferedBlocks = 0;
-        while (inBuf.position() < data.length) {
+        Scratch s = length <= SCRATCH_RETAIN_LIMIT ? scratch.get() : new Scratch();
+        int[] prev = buildLZ11HashChains(data, s);
+
+        int outPos = 4;
+        int flagPos = 0;
+        int bufferedBlocks = 8;
+        int pos = 0;
+        while (pos < length) {
             if (bufferedBlocks == 8) {
-                outBuf.put(Arrays.copyOfRange(blockBuf.array(),0,blockBuf.position()));
-                blockBuf.rewind();
-                blockBuf.put((byte)0);
+                flagPos = outPos++;
+                out[flagPos] = 0;
                 bufferedBlocks = 0;
             }
 
-            int oldLength = Math.min(inBuf.position(),0x1000);
-            LengthDispPair pair =
-                    getOccurrenceLength(
-                            inBuf,
-                            inBuf.position(),
-                            Math.min(data.length - inBuf.position(), 0x10110),
-                            inBuf.position() - oldLength,
-                            oldLength);
-            int length = pair.length;
-            int disp = pair.disp;
-
-            if (length < 3) {
-                blockBuf.put(inBuf.get());
+            int match = findLZ11Match(data, pos, prev);
+            int matchLength = match >>> 12;
+            if (matchLength < 3) {
+                out[outPos++] = data[pos++];
             } else {
-                inBuf.position(inBuf.position() + length);
-
-                byte compFlag = (byte)(blockBuf.get(0) | (1 << (7 - bufferedBlocks)));
-                blockBuf.put(0,compFlag);
-
-                if (length > 0x110) {
-                    blockBuf.put((byte)(0x10 | (((length - 0x111) >>> 12) & 0x0F))); // Dangerous
-                    blockBuf.put((byte)(((length - 0x111) >>> 4) & 0xFF));
-                    blockBuf.put((byte)(((length - 0x111) << 4) & 0xF0));
-                    blockBuf.position(blockBuf.position()-1);
-                } else if (length > 0x10) {
-                    blockBuf.put((byte)(((length - 0x111) >>> 4) & 0x0F));
-                    blockBuf.put((byte)(((length - 0x111) << 4) & 0xF0));
-                    blockBuf.position(blockBuf.position()-1);
+                pos += matchLength;
+                out[flagPos] |= (byte) (0x80 >>> bufferedBlocks);
+
+                int disp = match & 0xFFF;
+                if (matchLength > 0x110) {
+                    int extra = matchLength - 0x111;
+                    out[outPos++] = (byte) (0x10 | (extra >>> 12));
+                    out[outPos++] = (byte) (extra >>> 4);
+                    out[outPos++] = (byte) ((extra << 4) | (disp >>> 8));
+                } else if (matchLength > 0x10) {
+                    int extra = matchLength - 0x11;
+                    out[outPos++] = (byte) (extra >>> 4);
+                    out[outPos++] = (byte) ((extra << 4) | (disp >>> 8));
                 } else {
-                    blockBuf.put((byte)(((length - 1) << 4) & 0xF0));
-                    blockBuf.position(blockBuf.position()-1);
+                    out[outPos++] = (byte) (((matchLength - 1) << 4) | (disp >>> 8));
                 }
-                byte dispPart1 = (byte)(blockBuf.get(blockBuf.position()) | (byte)(((disp - 1) >>> 8) & 0x0F));
-                blockBuf.put(dispPart1);
-                blockBuf.put((byte)((disp - 1) & 0xFF));
+                out[outPos++] = (byte) disp;
             }
             bufferedBlocks++;
         }
-        if (bufferedBlocks > 0) {
-            outBuf.put(Arrays.copyOfRange(blockBuf.array(),0,blockBuf.position()));
-        }
-        return Arrays.copyOfRange(outBuf.array(),0,outBuf.position());
+        return Arrays.copyOf(out, outPos);
     }
 
-    private LengthDispPair getOccurrenceLength(ByteBuffer buf, int newIndex, int newLength, int oldIndex, int oldLength) {
-        int disp = 0;
-        if (newLength == 0) {
-            return new LengthDispPair(0,0);
-        }
-        int maxLength = 0;
-
-        for (int i = 0; i < oldLength - 1; i++) {
-            int currentOldStart = oldIndex + i;
-            int currentLength = 0;
-
-            for (int j = 0; j < newLength; j++) {
-                if (buf.get(currentOldStart + j) != buf.get(newIndex + j)) break;
-                currentLength++;
+    // Finds the longest earlier occurrence of the data at pos, up to 0x1000 bytes back (a distance of
+    // 1 is never used). Candidates come from the hash chains, nearest first, so the search stops as
+    // soon as it finds a match that runs to the length limit.
+    // Returns the length shifted left by 12, with the distance - 1 in the low 12 bits.
+    private static int findLZ11Match(byte[] data, int pos, int[] prev) {
+        int maxLength = Math.min(data.length - pos, 0x10110);
+        if (maxLength < 3) {
+            return 0;
+        }
+        int bestLength = 0;
+        int bestDisp = 0;
+        for (int candidate = prev[pos]; candidate >= 0; candidate = prev[candidate]) {
+            int disp = pos - candidate;
+            if (disp > 0x1000) {
+                break;
             }
-
-            if (currentLength > maxLength) {
-                maxLength = currentLength;
-                disp = oldLength - i;
-
-                if (maxLength == newLength) {
+            // Quick reject: a candidate that differs here can't beat the best so far
+            if (disp < 2 || data[candidate + bestLength] != data[pos + bestLength]) {
+                continue;
+            }
+            int len = 0;
+            while (len < maxLength && data[candidate + len] == data[pos + len]) {
+                len++;
+            }
+            if (len > bestLength) {
+                bestLength = len;
+                bestDisp = disp;
+                if (len == maxLength) {
                     break;
                 }
             }
         }
-        return new LengthDispPair(maxLength,disp);
+        return bestLength < 3 ? 0 : (bestLength << 12) | (bestDisp - 1);
     }
 
-    private class LengthDispPair {
-        int length;
-        int disp;
-
-        LengthDispPair(int length, int disp) {
-            this.length = length;
-            this.disp = disp;
-        }
+    private static int readUnsigned(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8) | ((buffer[offset + 2] & 0xFF) << 16)
+                | ((buffer[offset + 3] & 0x7F) << 24);
     }
 
-    private static class SearchPair {
-        public int l;
-        public int p;
-
-        public SearchPair(int l, int p) {
-            this.l = l;
-            this.p = p;
-        }
+    private static void writeUnsigned(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value & 0xFF);
+        buffer[offset + 1] = (byte) ((value >> 8) & 0xFF);
+        buffer[offset + 2] = (byte) ((value >> 16) & 0xFF);
+        buffer[offset + 3] = (byte) ((value >> 24) & 0x7F);
     }
 
-    private SearchPair SEARCH(int p, int[] raw_buffer, int raw, int raw_end) {
+    // Finds the longest match for the data at raw, preferring the smallest distance on ties.
+    // Rather than trying every distance in the window, this only visits the earlier positions
+    // that share a 3-byte prefix hash with raw (nearest first), since anything shorter than
+    // 3 bytes isn't worth encoding anyway. The result is the same as an exhaustive search.
+    // Returns the length in the upper 16 bits and the distance in the lower 16 bits.
+    private static int SEARCH(int p, byte[] raw_buffer, int raw, int raw_end, int[] prev) {
         int l = BLZ_THRESHOLD;
         int max = (raw >= BLZ_N) ? BLZ_N : raw;
-        for (int pos = 3; pos <= max; pos++) {
-            int len;
-            for (len = 0; len < BLZ_F; len++) {
-                if (raw + len == raw_end) {
-                    break;
-                }
-                if (len >= pos) {
-                    break;
-                }
-                if (raw_buffer[raw + len] != raw_buffer[raw + len - pos]) {
-                    break;
-                }
+        int maxLen = Math.min(BLZ_F, raw_end - raw);
+        if (maxLen <= BLZ_THRESHOLD) {
+            return (l << 16) | p;
+        }
+        for (int candidate = prev[raw]; candidate >= 0; candidate = prev[candidate]) {
+            int pos = raw - candidate;
+            if (pos > max) {
+                break;
+            }
+            // Matches can't overlap the data being encoded, so they're never longer than their distance
+            int limit = Math.min(maxLen, pos);
+            if (pos < 3 || limit <= l) {
+                continue;
+            }
+            int len = 0;
+            while (len < limit && raw_buffer[raw + len] == raw_buffer[candidate + len]) {
+                len++;
             }
 
             if (len > l) {
@@ -740,28 +662,113 @@ public class BLZCoder {
                 }
             }
         }
-        return new SearchPair(l, p);
+        return (l << 16) | p;
     }
 
-    private class BLZResult {
-        public BLZResult(int[] raw_buffer, int raw_len) {
-            this.buffer = raw_buffer;
-            this.length = raw_len;
+    // Works out the cheapest way to encode raw_buffer[0, raw_end), rather than greedily taking the
+    // longest match at each step. cost[i] is the fewest bits that encode the first i bytes (a literal
+    // is 1 flag bit + 8 bits, a match is 1 flag bit + 16 bits, so the encoded size of a prefix is
+    // exactly (cost + 7) / 8 bytes); every match found at i also gives matches of each shorter length.
+    // The returned end point is where the encoded prefix plus the raw remainder is smallest, which is
+    // also what keeps the data decodable in place. Afterwards s.cost[i] holds the step taken from
+    // each position i on the chosen path, packed like the result of SEARCH (a length of 1 is a literal).
+    private static int optimalParse(byte[] raw_buffer, int raw_end, int[] prev, Scratch s) {
+        s.ensureParseCapacity(raw_end);
+        int[] cost = s.cost;
+        int[] from = s.from;
+        Arrays.fill(cost, 1, raw_end + 1, Integer.MAX_VALUE);
+        cost[0] = 0;
+        int pos = 0;
+        for (int raw = 0; raw < raw_end; raw++) {
+            int base = cost[raw];
+            if (base + 9 < cost[raw + 1]) {
+                cost[raw + 1] = base + 9;
+                from[raw + 1] = 1 << 16;
+            }
+            int found = SEARCH(pos, raw_buffer, raw, raw_end, prev);
+            int len = found >>> 16;
+            pos = found & 0xFFFF;
+            for (int l = BLZ_THRESHOLD + 1; l <= len; l++) {
+                if (base + 17 < cost[raw + l]) {
+                    cost[raw + l] = base + 17;
+                    from[raw + l] = (l << 16) | pos;
+                }
+            }
         }
 
-        int[] buffer;
-        int length;
+        int end = 0;
+        for (int raw = 1; raw <= raw_end; raw++) {
+            if (((cost[raw] + 7) >>> 3) - raw < ((cost[end] + 7) >>> 3) - end) {
+                end = raw;
+            }
+        }
+
+        // Walk back from the end point, recording each step against the position it starts from
+        for (int raw = end; raw > 0; ) {
+            int step = from[raw];
+            raw -= step >>> 16;
+            cost[raw] = step;
+        }
+        return end;
     }
 
-    private void BLZ_Invert(int[] buffer, int offset, int length) {
-        int bottom, ch;
+    // prev[i] is the closest position before i whose 3-byte prefix has the same hash, or -1.
+    // buffer must have at least 2 readable bytes past length.
+    private static int[] buildHashChains(byte[] buffer, int length, Scratch s) {
+        int[] head = s.head;
+        Arrays.fill(head, -1);
+        int[] prev = s.prev;
+        for (int i = 0; i < length; i++) {
+            int hash = (((buffer[i] & 0xFF) << 8) ^ ((buffer[i + 1] & 0xFF) << 4) ^ (buffer[i + 2] & 0xFF)) & HASH_MASK;
+            prev[i] = head[hash];
+            head[hash] = i;
+        }
+        return prev;
+    }
 
-        bottom = offset + length - 1;
+    // Same as buildHashChains, but for data that isn't padded: the last 2 positions get no chain,
+    // which is fine since a match starting there would be too short to use.
+    private static int[] buildLZ11HashChains(byte[] data, Scratch s) {
+        s.ensureChainCapacity(data.length);
+        int[] head = s.head;
+        Arrays.fill(head, -1);
+        int[] prev = s.prev;
+        for (int i = 0; i < data.length - 2; i++) {
+            int hash = (((data[i] & 0xFF) << 8) ^ ((data[i + 1] & 0xFF) << 4) ^ (data[i + 2] & 0xFF)) & HASH_MASK;
+            prev[i] = head[hash];
+            head[hash] = i;
+        }
+        return prev;
+    }
+
+    // Per-thread working memory for the BLZ and LZ11 encoders
+    private static class Scratch {
+        byte[] raw = new byte[0];
+        byte[] pak = new byte[0];
+        int[] prev = new int[0];
+        int[] head = new int[1 << HASH_BITS];
+        int[] cost = new int[0];
+        int[] from = new int[0];
+
+        void ensureCapacity(int length) {
+            if (raw.length < length + 3) {
+                raw = new byte[length + 3];
+                pak = new byte[length + ((length + 7) / 8) + 11];
+            }
+            ensureChainCapacity(length);
+        }
 
-        while (offset < bottom) {
-            ch = buffer[offset];
-            buffer[offset++] = buffer[bottom];
-            buffer[bottom--] = ch;
+        void ensureChainCapacity(int length) {
+            if (prev.length < length) {
+                prev = new int[length];
+            }
+        }
+
+        void ensureParseCapacity(int length) {
+            if (cost.length < length + 1) {
+                cost = new int[length + 1];
+                from = new int[length + 1];
+            }
         }
     }
 
@@ -0,0 +1,137 @@
+package cuecompressors;
+
+/*----------------------------------------------------------------------------*/
+/*--  CompressionCache.java - remembers recent BLZ/LZ11 compression results  --*/
+/*--                                                                        --*/
+/*--  Part of "Universal Pokemon Randomizer ZX" by the UPR-ZX team          --*/
+/*--  Pokemon and any associated names and the like are                     --*/
+/*--  trademark and (C) Nintendo 1996-2020.                                 --*/
+/*--                                                                        --*/
+/*--  This program is free software: you can redistribute it and/or modify  --*/
+/*--  it under the terms of the GNU General Public License as published by  --*/
+/*--  the Free Software Foundation, either version 3 of the License, or     --*/
+/*--  (at your option) any later version.                                   --*/
+/*--                                                                        --*/
+/*--  This program is distributed in the hope that it will be useful,       --*/
+/*--  but WITHOUT ANY WARRANTY; without even the implied warranty of        --*/
+/*--  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the          --*/
+/*--  GNU General Public License for more details.                          --*/
+/*--                                                                        --*/
+/*--  You should have received a copy of the GNU General Public License     --*/
+/*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
+/*----------------------------------------------------------------------------*/
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Front end to the BLZCoder encoders that remembers their output for the lifetime of the process.
+ * When several ROMs are randomized in one run (batch randomization), a lot of what gets
+ * recompressed is identical from one to the next, so this lets it be compressed only once.
+ * Entries are looked up by algorithm, mode and a SHA-256 of the input, and the least recently
+ * used ones are dropped once the cached output passes MAX_CACHED_BYTES.
+ */
+public class CompressionCache {
+
+    private static final int ALGORITHM_BLZ = 0;
+    private static final int ALGORITHM_LZ11 = 1;
+
+    // Anything smaller than this is quicker to just compress again
+    private static final int MIN_CACHED_LENGTH = 0x100;
+    private static final long MAX_CACHED_BYTES = 64L * 1024 * 1024;
+
+    private static final Map<Key, byte[]> results = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cachedBytes = 0;
+
+    public static byte[] encodeBLZ(byte[] data, boolean arm9, boolean best) {
+        int mode = (arm9 ? 1 : 0) | (best ? 2 : 0);
+        return encode(ALGORITHM_BLZ, mode, data, () -> BLZCoder.encodeBLZ(data, arm9, best));
+    }
+
+    public static byte[] encodeLZ11(byte[] data) {
+        return encode(ALGORITHM_LZ11, 0, data, () -> BLZCoder.encodeLZ11(data));
+    }
+
+    public static synchronized void clear() {
+        results.clear();
+        cachedBytes = 0;
+    }
+
+    // Callers are free to modify what they get back, so the cache only ever hands out copies
+    private static byte[] encode(int algorithm, int mode, byte[] data, Supplier<byte[]> encoder) {
+        if (data.length < MIN_CACHED_LENGTH) {
+            return encoder.get();
+        }
+        Key key = new Key(algorithm, mode, data.length, sha256(data));
+        synchronized (CompressionCache.class) {
+            byte[] cached = results.get(key);
+            if (cached != null) {
+                return cached.clone();
+            }
+        }
+        // Compress outside the lock so that other threads aren't held up. Two threads
+        // compressing the same data at once will just both store the same result.
+        byte[] result = encoder.get();
+        if (result != null && result.length <= MAX_CACHED_BYTES) {
+            store(key, result.clone());
+        }
+        return result;
+    }
+
+    private static synchronized void store(Key key, byte[] result) {
+        byte[] previous = results.put(key, result);
+        if (previous != null) {
+            cachedBytes -= previous.length;
+        }
+        cachedBytes += result.length;
+        Iterator<byte[]> eldest = results.values().iterator();
+        while (cachedBytes > MAX_CACHED_BYTES && eldest.hasNext()) {
+            cachedBytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static class Key {
+        private final int algorithm;
+        private final int mode;
+        private final int length;
+        private final byte[] digest;
+        private final int hash;
+
+        Key(int algorithm, int mode, int length, byte[] digest) {
+            this.algorithm = algorithm;
+            this.mode = mode;
+            this.length = length;
+            this.digest = digest;
+            this.hash = Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return algorithm == other.algorithm && mode == other.mode && length == other.length
+                    && Arrays.equals(digest, other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
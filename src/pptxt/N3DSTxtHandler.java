@@ -20,15 +20,10 @@ package pptxt;
 /*--  along with this program. If not, see <http://www.gnu.org/licenses/>.  --*/
 /*----------------------------------------------------------------------------*/
 
-import com.dabomstew.pkrandom.constants.Gen7Constants;
 import com.dabomstew.pkrandom.constants.N3DSConstants;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class N3DSTxtHandler {
 
@@ -40,14 +35,29 @@ public class N3DSTxtHandler {
     private static final int KEY_TEXTCLEAR = 0xBE01;
     private static final int KEY_TEXTWAIT = 0xBE02;
     private static final int KEY_TEXTNULL = 0xBDFF;
-    private static boolean remapChars = false;
     private static boolean setEmptyText = false;
-    private static int romType;
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Working buffers are kept per thread, so that separate text files can be read and written in parallel
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private static class Scratch {
+        StringBuilder sb = new StringBuilder(256);
+        byte[] data = new byte[0x1000];
+        int length;
+
+        void writeShort(int value) {
+            if (length + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[length] = (byte) (value & 0xFF);
+            data[length + 1] = (byte) ((value >>> 8) & 0xFF);
+            length += 2;
+        }
+    }
 
     public static List<String> readTexts(byte[] ds, boolean remapChars, int romType) {
-        N3DSTxtHandler.remapChars = remapChars;
-        N3DSTxtHandler.romType = romType;
-        List<String> strings = new ArrayList<>();
         int numSections, numEntries, totalLength, initialKey, sectionDataOffset, sectionLength;
 
         numSections = readShort(ds, 0);
@@ -62,87 +72,78 @@ public class N3DSTxtHandler {
             return new ArrayList<>();
         }
 
-        int[] entryOffsets = new int[numEntries];
-        int[] entryLengths = new int[numEntries];
-
+        List<String> strings = new ArrayList<>(numEntries);
+        StringBuilder sb = scratch.get().sb;
+        int key = KEY_BASE;
         for (int i = 0; i < numEntries; i++) {
-            entryOffsets[i] = readLong(ds, (i * 8) + sectionDataOffset + 4) + sectionDataOffset;
-            entryLengths[i] = readShort(ds, (i * 8) + sectionDataOffset + 8);
-            byte[] encEntryData = Arrays.copyOfRange(ds, entryOffsets[i], entryOffsets[i] + entryLengths[i]*2);
-            strings.add(getEntryString(cryptEntryData(encEntryData,getEntryKey(i))));
+            int entryOffset = readLong(ds, (i * 8) + sectionDataOffset + 4) + sectionDataOffset;
+            int entryLength = readShort(ds, (i * 8) + sectionDataOffset + 8);
+            byte[] entryData = Arrays.copyOfRange(ds, entryOffset, entryOffset + entryLength * 2);
+            cryptEntryData(entryData, entryData.length, key);
+            sb.setLength(0);
+            appendEntryString(sb, entryData, remapChars, romType);
+            strings.add(sb.toString());
+            key = (key + KEY_ADVANCE) & 0xFFFF;
         }
 
         return strings;
     }
 
-    public static byte[] saveEntry(byte[] originalData, List<String> values, int romType) throws IOException {
+    public static byte[] saveEntry(byte[] originalData, List<String> values, boolean remapChars, int romType)
+            throws IOException {
+        Scratch s = scratch.get();
+        s.length = 0;
         int key = KEY_BASE;
-
-        ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
-        ByteBuffer offsetsBuf = ByteBuffer.allocate(values.size() * 8);
-        offsetsBuf.order(ByteOrder.LITTLE_ENDIAN);
-        int dataOffset = 4 + values.size() * 8;
-        for (int i = 0; i < values.size(); i++) {
+        int count = values.size();
+        int[] entryOffsets = new int[count];
+        int[] entryLengths = new int[count];
+        for (int i = 0; i < count; i++) {
             String text = values.get(i).trim();
             if (text.length() == 0 && setEmptyText) {
                 text = String.format("[~ %d]",i);
             }
-            byte[] decEntryData = getEntryData(text,romType);
-            byte[] encEntryData = cryptEntryData(decEntryData,key);
-            offsetsBuf.putInt(dataOffset + dataStream.size());
-            offsetsBuf.putShort((short)(encEntryData.length / 2));
-            offsetsBuf.position(offsetsBuf.position()+2);
-            dataStream.write(encEntryData);
-            if (encEntryData.length % 4 == 2) {
-                dataStream.write(0);
-                dataStream.write(0);
+            int start = s.length;
+            writeEntryData(s, text, remapChars, romType);
+            cryptEntryData(s.data, start, s.length - start, key);
+            entryOffsets[i] = start;
+            entryLengths[i] = (s.length - start) / 2;
+            if ((s.length - start) % 4 == 2) {
+                s.writeShort(0);
             }
             key = (key + KEY_ADVANCE) & 0xFFFF;
         }
 
         int sectionDataOffset = 0x10;
-        ByteBuffer headerBuf = ByteBuffer.allocate(0x14);
-        headerBuf.order(ByteOrder.LITTLE_ENDIAN);
-        headerBuf.putShort((short)1);
-        headerBuf.putShort((short)values.size());
-        headerBuf.putInt(4 + values.size()*8 + dataStream.size());
-        headerBuf.putInt(0);
-        headerBuf.putInt(sectionDataOffset);
-        headerBuf.putInt(4 + values.size()*8 + dataStream.size());
-
-        headerBuf.flip();
-        offsetsBuf.flip();
-
-        byte[] fullArray = new byte[headerBuf.limit() + offsetsBuf.limit() + dataStream.size()];
-        System.arraycopy(headerBuf.array(),
-                0,
-                fullArray,
-                0,
-                headerBuf.limit());
-        System.arraycopy(offsetsBuf.array(),
-                0,
-                fullArray,
-                headerBuf.limit(),
-                offsetsBuf.limit());
-        System.arraycopy(dataStream.toByteArray(),
-                0,
-                fullArray,
-                headerBuf.limit()+offsetsBuf.limit(),
-                dataStream.size());
+        int dataOffset = 4 + count * 8;
+        int sectionLength = dataOffset + s.length;
+        byte[] fullArray = new byte[sectionDataOffset + sectionLength];
+        writeShort(fullArray, 0, 1);
+        writeShort(fullArray, 2, count);
+        writeLong(fullArray, 4, sectionLength);
+        writeLong(fullArray, 8, 0);
+        writeLong(fullArray, 0xC, sectionDataOffset);
+        writeLong(fullArray, sectionDataOffset, sectionLength);
+        for (int i = 0; i < count; i++) {
+            int ofs = sectionDataOffset + 4 + i * 8;
+            writeLong(fullArray, ofs, dataOffset + entryOffsets[i]);
+            writeShort(fullArray, ofs + 4, entryLengths[i]);
+        }
+        System.arraycopy(s.data, 0, fullArray, sectionDataOffset + dataOffset, s.length);
 
         return fullArray;
     }
 
-    private static byte[] getEntryData(String entry, int romType) throws IOException {
+    private static void writeEntryData(Scratch s, String entry, boolean remapChars, int romType)
+            throws IOException {
         if (entry == null) {
-            return new byte[2];
+            s.writeShort(KEY_TERMINATOR);
+            return;
         }
 
-        ByteArrayOutputStream dataStream = new ByteArrayOutputStream();
         int i = 0;
         while (i < entry.length()) {
             int val = entry.charAt(i++);
-            val = tryRemapChar(val);
+            val = tryRemapChar(val, remapChars);
 
             if (val == '[') {
                 int bracket = entry.indexOf("]",i);
@@ -150,53 +151,32 @@ public class N3DSTxtHandler {
                     throw new IOException("Variable text is not capped properly: " + entry);
                 }
                 String varText = entry.substring(i,bracket);
-                List<Integer> varValues = getVariableValues(varText,romType);
-                for (int v: varValues) {
-                    dataStream.write(v & 0xFF);
-                    dataStream.write((v >>> 8) & 0xFF);
-                }
+                writeVariableValues(s, varText, romType);
                 i += 1 + varText.length();
             } else if (val == '\\') {
-                List<Integer> escapeValues = getEscapeValues(entry.charAt(i++));
-                for (int escVal: escapeValues) {
-                    dataStream.write(escVal & 0xFF);
-                    dataStream.write((escVal >>> 8) & 0xFF);
-                }
+                writeEscapeValues(s, entry.charAt(i++));
             } else {
-                dataStream.write(val & 0xFF);
-                dataStream.write((val >>> 8) & 0xFF);
+                s.writeShort(val);
             }
         }
-        dataStream.write(KEY_TERMINATOR & 0xFF);
-        dataStream.write((KEY_TERMINATOR >>> 8) & 0xFF);
-        return dataStream.toByteArray();
+        s.writeShort(KEY_TERMINATOR);
     }
 
-    private static byte[] cryptEntryData(byte[] data, int key) {
-        byte[] result = new byte[data.length];
-        for (int i = 0; i < result.length; i+= 2) {
-            int sh = (readShort(data, i) & 0xFFFF) ^ (key & 0xFFFF);
-            result[i] = (byte)(sh & 0xFF);
-            result[i+1] = (byte)((sh >> 8) & 0xFF);
-            key = (key << 3 | key >>> 13) & 0xFFFF;
-        }
-        return result;
+    private static void cryptEntryData(byte[] data, int length, int key) {
+        cryptEntryData(data, 0, length, key);
     }
 
-    private static int getEntryKey(int index) {
-        int key = KEY_BASE;
-        for (int i = 0; i < index; i++) {
-            key = (key + KEY_ADVANCE) & 0xFFFF;
+    private static void cryptEntryData(byte[] data, int offset, int length, int key) {
+        int end = offset + length;
+        for (int i = offset; i < end; i += 2) {
+            int sh = readShort(data, i) ^ (key & 0xFFFF);
+            data[i] = (byte)(sh & 0xFF);
+            data[i+1] = (byte)((sh >> 8) & 0xFF);
+            key = (key << 3 | key >>> 13) & 0xFFFF;
         }
-        return key;
     }
 
-    private static String getEntryString(byte[] data) {
-        if (data == null) {
-            return "";
-        }
-
-        StringBuilder sb = new StringBuilder();
+    private static void appendEntryString(StringBuilder sb, byte[] data, boolean remapChars, int romType) {
         int i = 0;
 
         while (i < data.length) {
@@ -207,7 +187,7 @@ public class N3DSTxtHandler {
             switch (val) {
                 case KEY_VARIABLE:
                     RefInt refI = new RefInt(i);
-                    sb.append(getVariableString(data,refI));
+                    appendVariableString(sb, data, refI, romType);
                     i = refI.val;
                     break;
                 case '\n':
@@ -220,87 +200,81 @@ public class N3DSTxtHandler {
                     sb.append("\\[");
                     break;
                 default:
-                    sb.append((char)tryUnmapChar(val));
+                    sb.append((char)tryUnmapChar(val, remapChars));
             }
         }
-        return sb.toString();
     }
 
-    private static List<Integer> getEscapeValues(char esc) throws IOException {
-        List<Integer> vals = new ArrayList<>();
+    private static void writeEscapeValues(Scratch s, char esc) throws IOException {
         switch (esc) {
             case 'n':
-                vals.add((int) '\n');
-                return vals;
+                s.writeShort('\n');
+                return;
             case '\\':
-                vals.add((int) '\\');
-                return vals;
+                s.writeShort('\\');
+                return;
             case '[':
-                vals.add((int) '[');
-                return vals;
+                s.writeShort('[');
+                return;
             case 'r':
-                vals.add(KEY_VARIABLE);
-                vals.add(1);
-                vals.add(KEY_TEXTRETURN);
-                return vals;
+                s.writeShort(KEY_VARIABLE);
+                s.writeShort(1);
+                s.writeShort(KEY_TEXTRETURN);
+                return;
             case 'c':
-                vals.add(KEY_VARIABLE);
-                vals.add(1);
-                vals.add(KEY_TEXTCLEAR);
-                return vals;
+                s.writeShort(KEY_VARIABLE);
+                s.writeShort(1);
+                s.writeShort(KEY_TEXTCLEAR);
+                return;
             default:
                 throw new IOException("Invalid terminated line: \\" + esc);
         }
     }
 
-    private static List<Integer> getVariableValues(String variable, int romType) throws IOException {
+    private static void writeVariableValues(Scratch s, String variable, int romType) throws IOException {
         String[] splitString = variable.split(" ");
         if (splitString.length < 2) {
             throw new IOException("Incorrectly formatted variable text: " + variable);
         }
 
-        List<Integer> vals = new ArrayList<>();
-        vals.add(KEY_VARIABLE);
+        // Worked out in full before writing anything, so a bad variable leaves nothing behind
+        int[] vals;
         switch (splitString[0]) {
             case "~":
-                vals.add(1);
-                vals.add(KEY_TEXTNULL);
-                vals.add(Integer.parseInt(splitString[1]));
+                vals = new int[] { 1, KEY_TEXTNULL, Integer.parseInt(splitString[1]) };
                 break;
             case "WAIT":
-                vals.add(1);
-                vals.add(KEY_TEXTWAIT);
-                vals.add(Integer.parseInt(splitString[1]));
+                vals = new int[] { 1, KEY_TEXTWAIT, Integer.parseInt(splitString[1]) };
                 break;
             case "VAR":
-                vals.addAll(getVariableParameters(splitString[1],romType));
+                vals = getVariableParameters(splitString[1],romType);
                 break;
             default:
                 throw new IOException("Unknown variable method type: " + variable);
         }
-        return vals;
+        s.writeShort(KEY_VARIABLE);
+        for (int v : vals) {
+            s.writeShort(v);
+        }
     }
 
-    private static List<Integer> getVariableParameters(String text, int romType) throws IOException {
-        List<Integer> vals = new ArrayList<>();
+    private static int[] getVariableParameters(String text, int romType) throws IOException {
         int bracket = text.indexOf("(");
         boolean noArgs = bracket < 0;
         String variable = noArgs ? text : text.substring(0,bracket);
         int varVal = getVariableNumber(variable,romType);
         if (!noArgs) {
             String[] args = text.substring(bracket + 1, text.length() - 1).split(",");
-            vals.add(1 + args.length);
-            vals.add(varVal);
-            vals.addAll(Arrays.stream(args)
-                    .mapToInt(s -> Integer.parseInt(s,16))
-                    .boxed()
-                    .collect(Collectors.toList()));
-
+            int[] vals = new int[2 + args.length];
+            vals[0] = 1 + args.length;
+            vals[1] = varVal;
+            for (int i = 0; i < args.length; i++) {
+                vals[2 + i] = Integer.parseInt(args[i],16);
+            }
+            return vals;
         } else {
-            vals.add(1);
-            vals.add(varVal);
+            return new int[] { 1, varVal };
         }
-        return vals;
     }
 
     private static int getVariableNumber(String variable, int romType) throws IOException {
@@ -315,8 +289,7 @@ public class N3DSTxtHandler {
         }
     }
 
-    private static String getVariableString(byte[] data, RefInt refI) {
-        StringBuilder sb = new StringBuilder();
+    private static void appendVariableString(StringBuilder sb, byte[] data, RefInt refI, int romType) {
         int count = readShort(data,refI.val);
         refI.val += 2;
         int variable = readShort(data,refI.val);
@@ -324,37 +297,50 @@ public class N3DSTxtHandler {
 
         switch (variable) {
             case KEY_TEXTRETURN:
-                return "\\r";
+                sb.append("\\r");
+                return;
             case KEY_TEXTCLEAR:
-                return "\\c";
+                sb.append("\\c");
+                return;
             case KEY_TEXTWAIT:
                 int time = readShort(data, refI.val);
                 refI.val += 2;
-                return String.format("[WAIT %d]", time);
+                sb.append("[WAIT ").append(time).append(']');
+                return;
             case KEY_TEXTNULL:
                 int line = readShort(data,refI.val);
                 refI.val += 2;
-                return String.format("[~ %d]",line);
+                sb.append("[~ ").append(line).append(']');
+                return;
         }
 
-        String varName = N3DSConstants.getTextVariableCodes(romType).getOrDefault(variable,String.format("%04X",variable));
-        sb.append("[VAR ").append(varName);
+        String varName = N3DSConstants.getTextVariableCodes(romType).get(variable);
+        sb.append("[VAR ");
+        if (varName != null) {
+            sb.append(varName);
+        } else {
+            appendHex(sb, variable);
+        }
         if (count > 1) {
             sb.append("(");
             while (count > 1 && refI.val < data.length) {
                 int arg = readShort(data,refI.val);
                 refI.val += 2;
-                sb.append(String.format("%04X",arg));
+                appendHex(sb, arg);
                 if (--count == 1 || refI.val >= data.length) break;
                 sb.append(",");
             }
             sb.append(")");
         }
         sb.append("]");
-        return sb.toString();
     }
 
-    private static int tryRemapChar(int val) {
+    private static void appendHex(StringBuilder sb, int value) {
+        sb.append(HEX_DIGITS[(value >> 12) & 0xF]).append(HEX_DIGITS[(value >> 8) & 0xF]);
+        sb.append(HEX_DIGITS[(value >> 4) & 0xF]).append(HEX_DIGITS[value & 0xF]);
+    }
+
+    private static int tryRemapChar(int val, boolean remapChars) {
         if (!remapChars) {
             return val;
         }
@@ -372,7 +358,7 @@ public class N3DSTxtHandler {
         }
     }
 
-    private static int tryUnmapChar(int val) {
+    private static int tryUnmapChar(int val, boolean remapChars) {
         if (!remapChars) {
             return val;
         }
@@ -399,6 +385,18 @@ public class N3DSTxtHandler {
                 + ((data[offset + 3] & 0xFF) << 24);
     }
 
+    private static void writeShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+    }
+
+    private static void writeLong(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+        data[offset + 2] = (byte) ((value >> 16) & 0xFF);
+        data[offset + 3] = (byte) ((value >> 24) & 0xFF);
+    }
+
     private static class RefInt {
         int val;
 
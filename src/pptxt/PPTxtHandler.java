@@ -6,117 +6,84 @@ package pptxt;
 /*--  Ported to Java and bugfixed/customized by Dabomstew                   --*/
 /*----------------------------------------------------------------------------*/
 
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TextTable;
+import com.dabomstew.pkrandom.TextTrie;
 
 public class PPTxtHandler {
 
-    private static Map<String, String> pokeToText = new HashMap<>();
-    private static Map<String, String> textToPoke = new HashMap<>();
-
-    private static Pattern pokeToTextPattern, textToPokePattern;
+    private static String[] pokeToText = new String[0];
+    private static TextTrie textToPoke = new TextTrie();
 
     static {
         try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("Generation5.tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
-                    }
-                    pokeToText.put(Character.toString((char) Integer.parseInt(r[0], 16)), r[1].replace("\\", "\\\\")
-                            .replace("$", "\\$"));
-                    textToPoke.put(r[1], "\\\\x" + r[0]);
-                }
-            }
-            sc.close();
-            pokeToTextPattern = makePattern(pokeToText.keySet());
-            textToPokePattern = makePattern(textToPoke.keySet());
-        } catch (FileNotFoundException e) {
+            TextTable table = TextTable.load("Generation5.tbl");
+            pokeToText = table.getDecodeTable();
+            textToPoke = table.getEncodeTrie();
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
-    private static Pattern makePattern(Iterable<String> tokens) {
-        String patternStr = "("
-                + implode(tokens, "|").replace("\\", "\\\\").replace("[", "\\[").replace("]", "\\]")
-                        .replace("(", "\\(").replace(")", "\\)") + ")";
-        return Pattern.compile(patternStr);
-    }
-
-    private static String implode(Iterable<String> tokens, String sep) {
-        StringBuilder sb = new StringBuilder();
-        boolean first = true;
-        for (String token : tokens) {
-            if (!first) {
-                sb.append(sep);
-            }
-            sb.append(token);
-            first = false;
-        }
-        return sb.toString();
-    }
-
     /**
      * Decompress the words given into chars according to 9bits per char format
      * Based off poketext's implementation of the same in gen4, but uses all 16
      * bits per word as opposed to 15
      * 
      * @param chars
-     *            List of words, beginning with [F100] which is skipped.
-     * @return Decompressed list of integers corresponding to characters
+     *            Array of words, beginning with [F100] which is skipped.
+     * @return Decompressed array of integers corresponding to characters
      */
-    private static List<Integer> decompress(List<Integer> chars) {
-        List<Integer> uncomp = new ArrayList<>();
+    private static int[] decompress(int[] chars) {
+        int[] uncomp = new int[chars.length * 2];
+        int count = 0;
         int j = 1;
         int shift1 = 0;
         int trans = 0;
         while (true) {
-            int tmp = chars.get(j);
-            tmp = tmp >> shift1;
-            int tmp1 = tmp;
+            int tmp1;
             if (shift1 >= 0x10) {
                 shift1 -= 0x10;
                 if (shift1 > 0) {
-                    tmp1 = (trans | ((chars.get(j) << (9 - shift1)) & 0x1FF));
+                    tmp1 = (trans | ((chars[j] << (9 - shift1)) & 0x1FF));
                     if ((tmp1 & 0xFF) == 0xFF) {
                         break;
                     }
                     if (tmp1 != 0x0 && tmp1 != 0x1) {
-                        uncomp.add(tmp1);
+                        if (count == uncomp.length) {
+                            uncomp = Arrays.copyOf(uncomp, count * 2 + 2);
+                        }
+                        uncomp[count++] = tmp1;
                     }
                 }
             } else {
-                tmp1 = ((chars.get(j) >> shift1) & 0x1FF);
+                tmp1 = ((chars[j] >> shift1) & 0x1FF);
                 if ((tmp1 & 0xFF) == 0xFF) {
                     break;
                 }
                 if (tmp1 != 0x0 && tmp1 != 0x1) {
-                    uncomp.add(tmp1);
+                    if (count == uncomp.length) {
+                        uncomp = Arrays.copyOf(uncomp, count * 2 + 2);
+                    }
+                    uncomp[count++] = tmp1;
                 }
                 shift1 += 9;
                 if (shift1 < 0x10) {
-                    trans = ((chars.get(j) >> shift1) & 0x1FF);
+                    trans = ((chars[j] >> shift1) & 0x1FF);
                     shift1 += 9;
                 }
                 j += 1;
             }
         }
-        return uncomp;
+        return Arrays.copyOf(uncomp, count);
     }
 
-    private static List<Integer> lastKeys;
-    private static List<Integer> lastUnknowns;
+    private static int[] lastKeys;
+    private static int[] lastUnknowns;
 
     /**
      * Take a byte-array corresponding to a NARC entry and build a list of
@@ -128,112 +95,122 @@ public class PPTxtHandler {
      */
 
     public static List<String> readTexts(byte[] ds) {
-        int pos = 0;
-        int i = 0;
-        lastKeys = new ArrayList<>();
-        lastUnknowns = new ArrayList<>();
         List<String> strings = new ArrayList<>();
-        int numSections, numEntries, tmpCharCount, tmpUnknown, tmpChar;
-        int tmpOffset;
-        int[] sizeSections = new int[] { 0, 0, 0 };
-        int[] sectionOffset = new int[] { 0, 0, 0 };
-        Map<Integer, List<Integer>> tableOffsets = new HashMap<>();
-        Map<Integer, List<Integer>> characterCount = new HashMap<>();
-        Map<Integer, List<Integer>> unknown = new HashMap<>();
-        Map<Integer, List<List<Integer>>> encText = new HashMap<>();
-        Map<Integer, List<List<String>>> decText = new HashMap<>();
-        StringBuilder sb;
-        int key;
-
-        numSections = readWord(ds, 0);
-        numEntries = readWord(ds, 2);
-        sizeSections[0] = readLong(ds, 4);
-        // unk1 = readLong(ds, 8);
-        pos += 12;
-        if (numSections > i) {
-            for (int z = 0; z < numSections; z++) {
-                sectionOffset[z] = readLong(ds, pos);
-                pos += 4;
-            }
-            pos = sectionOffset[i];
-            sizeSections[i] = readLong(ds, pos);
-            pos += 4;
-            tableOffsets.put(i, new ArrayList<>());
-            characterCount.put(i, new ArrayList<>());
-            unknown.put(i, new ArrayList<>());
-            encText.put(i, new ArrayList<>());
-            decText.put(i, new ArrayList<>());
-            for (int j = 0; j < numEntries; j++) {
-                tmpOffset = readLong(ds, pos);
-                pos += 4;
-                tmpCharCount = readWord(ds, pos);
-                pos += 2;
-                tmpUnknown = readWord(ds, pos);
+        int[] tableOffsets = readTable(ds);
+        if (tableOffsets == null) {
+            return strings;
+        }
+        int sectionOffset = readLong(ds, 12);
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < tableOffsets.length; j++) {
+            int tmpCharCount = readWord(ds, sectionOffset + 8 + 8 * j);
+            int[] encText = new int[tmpCharCount];
+            int pos = sectionOffset + tableOffsets[j];
+            for (int k = 0; k < tmpCharCount; k++) {
+                encText[k] = readWord(ds, pos);
                 pos += 2;
-                tableOffsets.get(i).add(tmpOffset);
-                characterCount.get(i).add(tmpCharCount);
-                unknown.get(i).add(tmpUnknown);
-                lastUnknowns.add(tmpUnknown);
             }
-            for (int j = 0; j < numEntries; j++) {
-                List<Integer> tmpEncChars = new ArrayList<>();
-                pos = sectionOffset[i] + tableOffsets.get(i).get(j);
-                for (int k = 0; k < characterCount.get(i).get(j); k++) {
-                    tmpChar = readWord(ds, pos);
-                    pos += 2;
-                    tmpEncChars.add(tmpChar);
-                }
-                encText.get(i).add(tmpEncChars);
-                key = encText.get(i).get(j).get(characterCount.get(i).get(j) - 1) ^ 0xFFFF;
-                for (int k = characterCount.get(i).get(j) - 1; k >= 0; k--) {
-                    encText.get(i).get(j).set(k, (encText.get(i).get(j).get(k)) ^ key);
-                    if (k == 0) {
-                        lastKeys.add(key);
-                    }
-                    key = ((key >>> 3) | (key << 13)) & 0xffff;
-                }
-                if (encText.get(i).get(j).get(0) == 0xF100) {
-                    encText.get(i).set(j, decompress(encText.get(i).get(j)));
-                    characterCount.get(i).set(j, encText.get(i).get(j).size());
+            int key = encText[tmpCharCount - 1] ^ 0xFFFF;
+            for (int k = tmpCharCount - 1; k >= 0; k--) {
+                encText[k] ^= key;
+                key = ((key >>> 3) | (key << 13)) & 0xffff;
+            }
+            if (encText[0] == 0xF100) {
+                encText = decompress(encText);
+            }
+            sb.setLength(0);
+            for (int c : encText) {
+                if (c == 0xFFFF) {
+                    continue;
                 }
-                List<String> chars = new ArrayList<>();
-                sb = new StringBuilder();
-                for (int k = 0; k < characterCount.get(i).get(j); k++) {
-                    if (encText.get(i).get(j).get(k) == 0xFFFF) {
-                        chars.add("\\xFFFF");
+                if (c > 20 && c <= 0xFFF0 && Character.UnicodeBlock.of(c) != null) {
+                    // Parse chars against the table as they're decoded
+                    String text = c < pokeToText.length ? pokeToText[c] : null;
+                    if (text != null) {
+                        sb.append(text);
                     } else {
-                        if (encText.get(i).get(j).get(k) > 20 && encText.get(i).get(j).get(k) <= 0xFFF0
-                                && Character.UnicodeBlock.of(encText.get(i).get(j).get(k)) != null) {
-                            chars.add("" + ((char) encText.get(i).get(j).get(k).intValue()));
-                        } else {
-                            String num = String.format("%04X", encText.get(i).get(j).get(k));
-                            chars.add("\\x" + num);
-                        }
-                        sb.append(chars.get(k));
+                        sb.append((char) c);
                     }
+                } else {
+                    appendEscape(sb, c);
                 }
-                strings.add(sb.toString());
-                decText.get(i).add(chars);
             }
+            strings.add(sb.toString());
         }
+        return strings;
+    }
 
-        // Parse strings against the table
-        for (int sn = 0; sn < strings.size(); sn++) {
-            strings.set(sn, bulkReplace(strings.get(sn), pokeToTextPattern, pokeToText));
+    /**
+     * Read the entry table of language 0 into lastKeys and lastUnknowns.
+     * 
+     * @return The offsets of each entry within the section, or null if the
+     *         file has no sections at all.
+     */
+    private static int[] readTable(byte[] ds) {
+        int numSections = readWord(ds, 0);
+        int numEntries = readWord(ds, 2);
+        if (numSections == 0) {
+            lastKeys = new int[0];
+            lastUnknowns = new int[0];
+            return null;
         }
-        return strings;
+        int sectionOffset = readLong(ds, 12);
+        int pos = sectionOffset + 4;
+        int[] tableOffsets = new int[numEntries];
+        lastKeys = new int[numEntries];
+        lastUnknowns = new int[numEntries];
+        for (int j = 0; j < numEntries; j++) {
+            tableOffsets[j] = readLong(ds, pos);
+            lastUnknowns[j] = readWord(ds, pos + 6);
+            pos += 8;
+        }
+        for (int j = 0; j < numEntries; j++) {
+            int tmpCharCount = readWord(ds, sectionOffset + 8 + 8 * j);
+            // The key of the first char, found by walking back from the last
+            // char (always 0xFFFF once decrypted)
+            int key = readWord(ds, sectionOffset + tableOffsets[j] + 2 * (tmpCharCount - 1)) ^ 0xFFFF;
+            for (int k = tmpCharCount - 1; k > 0; k--) {
+                key = ((key >>> 3) | (key << 13)) & 0xffff;
+            }
+            lastKeys[j] = key;
+        }
+        return tableOffsets;
     }
 
-    private static String bulkReplace(String string, Pattern pattern, Map<String, String> replacements) {
-        Matcher matcher = pattern.matcher(string);
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
 
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            matcher.appendReplacement(sb, replacements.get(matcher.group(1)));
-        }
-        matcher.appendTail(sb);
+    private static void appendEscape(StringBuilder sb, int c) {
+        sb.append('\\').append('x');
+        sb.append(HEX_DIGITS[(c >> 12) & 0xF]).append(HEX_DIGITS[(c >> 8) & 0xF]);
+        sb.append(HEX_DIGITS[(c >> 4) & 0xF]).append(HEX_DIGITS[c & 0xF]);
+    }
 
-        return sb.toString();
+    /**
+     * Replace every table entry found in string with the \\x escape of its
+     * code, taking the longest one where several start at the same position.
+     */
+    private static String bulkReplace(String string, TextTrie table) {
+        StringBuilder sb = null;
+        int copied = 0;
+        int length = string.length();
+        int i = 0;
+        while (i < length) {
+            int match = table.match(string, i, length - i);
+            if (match < 0) {
+                i++;
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length + 16);
+            }
+            sb.append(string, copied, i);
+            appendEscape(sb, match & 0xFFFF);
+            i = copied = i + (match >>> 16);
+        }
+        if (sb == null) {
+            return string;
+        }
+        return sb.append(string, copied, length).toString();
     }
 
     /**
@@ -252,11 +229,11 @@ public class PPTxtHandler {
 
         // Parse strings against the reverse table
         for (int sn = 0; sn < text.size(); sn++) {
-            text.set(sn, bulkReplace(text.get(sn), textToPokePattern, textToPoke));
+            text.set(sn, bulkReplace(text.get(sn), textToPoke));
         }
 
         // Make sure we have the original unknowns etc
-        readTexts(originalData);
+        readTable(originalData);
 
         // Start getting stuff
         int numSections, numEntries;
@@ -305,21 +282,24 @@ public class PPTxtHandler {
     }
 
     private static byte[] makeSection(List<String> strings, int numEntries) {
-        List<List<Integer>> data = new ArrayList<>();
+        int[][] data = new int[numEntries][];
         int size = 0;
         int offset = 4 + 8 * numEntries;
         int charCount;
         for (int i = 0; i < numEntries; i++) {
-            data.add(parseString(strings.get(i), i));
-            size += (data.get(i).size() * 2);
+            data[i] = parseString(strings.get(i), i);
+            size += (data[i].length * 2);
         }
         if (size % 4 == 2) {
             size += 2;
-            int tmpKey = lastKeys.get(numEntries - 1);
-            for (int i = 0; i < data.get(numEntries - 1).size(); i++) {
+            int[] last = data[numEntries - 1];
+            int tmpKey = lastKeys[numEntries - 1];
+            for (int i = 0; i < last.length; i++) {
                 tmpKey = ((tmpKey << 3) | (tmpKey >> 13)) & 0xFFFF;
             }
-            data.get(numEntries - 1).add(0xFFFF ^ tmpKey);
+            last = Arrays.copyOf(last, last.length + 1);
+            last[last.length - 1] = 0xFFFF ^ tmpKey;
+            data[numEntries - 1] = last;
         }
         size += offset;
         byte[] section = new byte[size];
@@ -327,17 +307,17 @@ public class PPTxtHandler {
         writeLong(section, pos, size);
         pos += 4;
         for (int i = 0; i < numEntries; i++) {
-            charCount = data.get(i).size();
+            charCount = data[i].length;
             writeLong(section, pos, offset);
             pos += 4;
             writeWord(section, pos, charCount);
             pos += 2;
-            writeWord(section, pos, lastUnknowns.get(i));
+            writeWord(section, pos, lastUnknowns[i]);
             pos += 2;
             offset += (charCount * 2);
         }
         for (int i = 0; i < numEntries; i++) {
-            for (int word : data.get(i)) {
+            for (int word : data[i]) {
                 writeWord(section, pos, word);
                 pos += 2;
             }
@@ -345,27 +325,28 @@ public class PPTxtHandler {
         return section;
     }
 
-    private static List<Integer> parseString(String string, int entry_id) {
-        List<Integer> chars = new ArrayList<>();
+    private static int[] parseString(String string, int entry_id) {
+        int[] chars = new int[string.length() + 1];
+        int count = 0;
         for (int i = 0; i < string.length(); i++) {
             if (string.charAt(i) != '\\') {
-                chars.add((int) string.charAt(i));
+                chars[count++] = string.charAt(i);
             } else {
                 if (((i + 2) < string.length()) && string.charAt(i + 2) == '{') {
-                    chars.add((int) string.charAt(i));
+                    chars[count++] = string.charAt(i);
                 } else {
-                    chars.add(Integer.parseInt(string.substring(i + 2, i + 6), 16));
+                    chars[count++] = Integer.parseInt(string.substring(i + 2, i + 6), 16);
                     i += 5;
                 }
             }
         }
-        chars.add(0xFFFF);
-        int key = lastKeys.get(entry_id);
-        for (int i = 0; i < chars.size(); i++) {
-            chars.set(i, (chars.get(i) ^ key) & 0xFFFF);
+        chars[count++] = 0xFFFF;
+        int key = lastKeys[entry_id];
+        for (int i = 0; i < count; i++) {
+            chars[i] = (chars[i] ^ key) & 0xFFFF;
             key = ((key << 3) | (key >>> 13)) & 0xFFFF;
         }
-        return chars;
+        return count == chars.length ? chars : Arrays.copyOf(chars, count);
     }
 
     private static int readWord(byte[] data, int offset) {
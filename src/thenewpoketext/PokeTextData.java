@@ -105,70 +105,71 @@ public class PokeTextData {
     }
 
     private String MakeString(int count, int idx) {
-        StringBuilder string = new StringBuilder();
-        List<Integer> chars = new ArrayList<>();
-        List<Integer> uncomp = new ArrayList<>();
+        StringBuilder string = new StringBuilder(count);
+        int[] chars = new int[count];
         for (int i = 0; i < count; i++) {
-            chars.add(read16(idx));
+            chars[i] = read16(idx);
             idx += 2;
         }
 
-        if (chars.get(0) == 0xF100) {
+        if (chars[0] == 0xF100) {
             compressFlag = true;
+            // 15 bits per word hold 5 chars every 3 words, plus a partial one
+            int[] uncomp = new int[(count * 15) / 9 + 2];
+            int n = 0;
             int j = 1;
             int shift1 = 0;
             int trans = 0;
             while (true) {
-                int tmp = chars.get(j);
-                tmp = tmp >> shift1;
-                int tmp1 = tmp;
+                int tmp1;
                 if (shift1 >= 0xF) {
                     shift1 -= 0xF;
                     if (shift1 > 0) {
-                        tmp1 = (trans | ((chars.get(j) << (9 - shift1)) & 0x1FF));
+                        tmp1 = (trans | ((chars[j] << (9 - shift1)) & 0x1FF));
                         if (tmp1 == 0x1FF) {
                             break;
                         }
-                        uncomp.add(tmp1);
+                        uncomp[n++] = tmp1;
                     }
                 } else {
-                    tmp1 = ((chars.get(j) >> shift1) & 0x1FF);
+                    tmp1 = ((chars[j] >> shift1) & 0x1FF);
                     if (tmp1 == 0x1FF) {
                         break;
                     }
-                    uncomp.add(tmp1);
+                    uncomp[n++] = tmp1;
                     shift1 += 9;
                     if (shift1 < 0xF) {
-                        trans = ((chars.get(j) >> shift1) & 0x1FF);
+                        trans = ((chars[j] >> shift1) & 0x1FF);
                         shift1 += 9;
                     }
                     j += 1;
                 }
             }
-            chars = uncomp;
+            chars = Arrays.copyOf(uncomp, n);
         }
         int i = 0;
-        for (int c = 0; c < chars.size(); c++) {
-            int currChar = chars.get(i);
-            if (UnicodeParser.tb[currChar] != null) {
-                string.append(UnicodeParser.tb[currChar]);
+        for (int c = 0; c < chars.length; c++) {
+            int currChar = chars[i];
+            String text = UnicodeParser.lookup(currChar);
+            if (text != null) {
+                string.append(text);
             } else {
                 if (currChar == 0xFFFE) {
                     i++;
-                    string.append("\\v").append(String.format("%04X", chars.get(i)));
+                    appendEscape(string, 'v', chars[i]);
                     i++;
-                    int total = chars.get(i);
+                    int total = chars[i];
                     if (total == 0) {
-                        string.append("\\x").append(String.format("%04X", 0));
+                        appendEscape(string, 'x', 0);
                     }
                     for (int z = 0; z < total; z++) {
                         i++;
-                        string.append("\\z").append(String.format("%04X", chars.get(i)));
+                        appendEscape(string, 'z', chars[i]);
                     }
                 } else if (currChar == 0xFFFF) {
                     break;
                 } else {
-                    string.append("\\x").append(String.format("%04X", chars.get(i)));
+                    appendEscape(string, 'x', chars[i]);
                 }
             }
             i++;
@@ -176,6 +177,14 @@ public class PokeTextData {
         return string.toString();
     }
 
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static void appendEscape(StringBuilder string, char type, int value) {
+        string.append('\\').append(type);
+        string.append(HEX_DIGITS[(value >> 12) & 0xF]).append(HEX_DIGITS[(value >> 8) & 0xF]);
+        string.append(HEX_DIGITS[(value >> 4) & 0xF]).append(HEX_DIGITS[value & 0xF]);
+    }
+
     public void SetKey(int key) {
         write16(key, 2);
     }
@@ -6,179 +6,143 @@ package thenewpoketext;
 /*--  Ported to Java and bugfixed/customized by Dabomstew                   --*/
 /*----------------------------------------------------------------------------*/
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 public class TextToPoke {
 
     public static byte[] MakeFile(List<String> textarr, boolean compressed) {
-        int base = textarr.size() * 8 + 4;
-        List<PointerEntry> ptrtable = new ArrayList<>();
-        List<List<Integer>> rawdata = new ArrayList<>();
-        for (String aTextarr : textarr) {
-            List<Integer> data = ToCode(aTextarr, compressed);
-            int l = data.size();
-            ptrtable.add(new PointerEntry(base, l));
-            rawdata.add(data);
-            base += l * 2;
+        int count = textarr.size();
+        int[][] rawdata = new int[count][];
+        int size = count * 8 + 4;
+        for (int i = 0; i < count; i++) {
+            rawdata[i] = ToCode(textarr.get(i), compressed);
+            size += rawdata[i].length * 2;
         }
 
-        List<Integer> hdr = Arrays.asList(textarr.size(), 0);
-
-        return join(wordListToBarr(hdr), pointerListToBarr(ptrtable), listOfWordListToBarr(rawdata));
+        byte[] barr = new byte[size];
+        writeWord(barr, 0, count);
+        int base = count * 8 + 4;
+        for (int i = 0; i < count; i++) {
+            int l = rawdata[i].length;
+            writeLong(barr, 4 + i * 8, base);
+            writeLong(barr, 8 + i * 8, l);
+            for (int j = 0; j < l; j++) {
+                writeWord(barr, base + j * 2, rawdata[i][j]);
+            }
+            base += l * 2;
+        }
+        return barr;
     }
 
-    private static List<Integer> ToCode(String text, boolean compressed) {
-        List<Integer> data = new ArrayList<>();
-        while (text.length() != 0) {
-            int i = Math.max(0, 6 - text.length());
-            if (text.charAt(0) == '\\') {
-                if (text.charAt(1) == 'x') {
-                    data.add(Integer.parseInt(text.substring(2, 6), 16));
-                    text = text.substring(6);
-                } else if (text.charAt(1) == 'v') {
-                    data.add(0xFFFE);
-                    data.add(Integer.parseInt(text.substring(2, 6), 16));
-                    text = text.substring(6);
-                } else if (text.charAt(1) == 'z') {
-                    List<Integer> var = new ArrayList<>();
+    private static int[] ToCode(String text, boolean compressed) {
+        int length = text.length();
+        // Every char and escape makes at most one code, except \v which makes two
+        int[] data = new int[length + 2];
+        int size = 0;
+        int pos = 0;
+        while (pos < length) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            if (text.charAt(pos) == '\\') {
+                char escape = text.charAt(pos + 1);
+                if (escape == 'x') {
+                    data[size++] = Integer.parseInt(text.substring(pos + 2, pos + 6), 16);
+                    pos += 6;
+                } else if (escape == 'v') {
+                    data[size++] = 0xFFFE;
+                    data[size++] = Integer.parseInt(text.substring(pos + 2, pos + 6), 16);
+                    pos += 6;
+                } else if (escape == 'z') {
+                    int countPos = size++;
                     int w = 0;
-                    while (text.length() != 0) {
-                        if (text.charAt(0) == '\\' && text.charAt(1) == 'z') {
+                    while (pos < length) {
+                        if (text.charAt(pos) == '\\' && text.charAt(pos + 1) == 'z') {
+                            if (size == data.length) {
+                                data = Arrays.copyOf(data, data.length * 2);
+                            }
                             w++;
-                            var.add(Integer.parseInt(text.substring(2, 6), 16));
-                            text = text.substring(6);
+                            data[size++] = Integer.parseInt(text.substring(pos + 2, pos + 6), 16);
+                            pos += 6;
                         } else {
                             break;
                         }
                     }
-                    data.add(w);
-                    data.addAll(var);
-                } else if (text.charAt(1) == 'n') {
-                    data.add(0xE000);
-                    text = text.substring(2);
-                } else if (text.charAt(1) == 'p') {
-                    data.add(0x25BC);
-                    text = text.substring(2);
-                } else if (text.charAt(1) == 'l') {
-                    data.add(0x25BD);
-                    text = text.substring(2);
-                } else if (text.substring(1, 4).equals("and")) {
-                    data.add(0x1C2);
-                    text = text.substring(4);
+                    data[countPos] = w;
+                } else if (escape == 'n') {
+                    data[size++] = 0xE000;
+                    pos += 2;
+                } else if (escape == 'p') {
+                    data[size++] = 0x25BC;
+                    pos += 2;
+                } else if (escape == 'l') {
+                    data[size++] = 0x25BD;
+                    pos += 2;
+                } else if (text.substring(pos + 1, pos + 4).equals("and")) {
+                    data[size++] = 0x1C2;
+                    pos += 4;
                 } else {
-                    System.out.printf("unknown escape: %s\n", text.substring(1, 2));
-                    text = text.substring(2);
+                    System.out.printf("unknown escape: %s\n", text.substring(pos + 1, pos + 2));
+                    pos += 2;
                 }
             } else {
-                while (!(UnicodeParser.d.containsKey(text.substring(0, 6 - i)) || (i == 6))) {
-                    i++;
-                }
-                if (i == 6) {
-                    System.out.printf("Char not found %s(%x)", text.substring(0, 1), (byte)text.charAt(0));
-                    text = text.substring(1);
+                // Longest table entry of up to 6 chars starting here
+                int match = UnicodeParser.d.match(text, pos, 6);
+                if (match < 0) {
+                    System.out.printf("Char not found %s(%x)", text.substring(pos, pos + 1), (byte)text.charAt(pos));
+                    pos++;
                 } else {
-                    data.add(UnicodeParser.d.get(text.substring(0, 6 - i)));
-                    text = text.substring(6 - i);
+                    data[size++] = match & 0xFFFF;
+                    pos += match >>> 16;
                 }
             }
         }
         if (compressed) {
-            if (data.size() % 5 != 0 || data.size() == 0) {
-                data.add(0x1FF);
-            }
-            byte[] bits = new byte[data.size() * 9];
-            int bc = 0;
-            for (Integer aData : data) {
-                for (int j = 0; j < 9; j++) {
-                    bits[bc++] = (byte) ((aData >> j) & 1);
+            if (size % 5 != 0 || size == 0) {
+                if (size == data.length) {
+                    data = Arrays.copyOf(data, size + 1);
                 }
+                data[size++] = 0x1FF;
             }
-            int tmp_uint16 = 0;
-            data.clear();
-            data.add(0xF100);
-            for (int i = 0; i < bits.length; i++) {
-                if (i % 15 == 0 && i != 0) {
-                    data.add(tmp_uint16);
-                    tmp_uint16 = 0;
+            // Pack the 9-bit codes into 15 bits per word, after the 0xF100 marker
+            int[] packed = new int[(size * 9 + 14) / 15 + 2];
+            packed[0] = 0xF100;
+            int words = 1;
+            int acc = 0;
+            int bits = 0;
+            for (int i = 0; i < size; i++) {
+                acc |= (data[i] & 0x1FF) << bits;
+                bits += 9;
+                if (bits >= 15) {
+                    packed[words++] = acc & 0x7FFF;
+                    acc >>>= 15;
+                    bits -= 15;
                 }
-                tmp_uint16 |= (bits[i] << (i % 15));
             }
-            data.add(tmp_uint16);
-        }
-        data.add(0xFFFF);
-        return data;
-    }
-
-    private static byte[] join(byte[]... args) {
-        int tlen = 0;
-        for (byte[] arr : args) {
-            tlen += arr.length;
-        }
-        byte[] barr = new byte[tlen];
-        int offs = 0;
-        for (byte[] arr : args) {
-            System.arraycopy(arr, 0, barr, offs, arr.length);
-            offs += arr.length;
-        }
-        return barr;
-    }
-
-    private static byte[] wordListToBarr(List<Integer> list) {
-        byte[] barr = new byte[list.size() * 2];
-        int l = list.size();
-        for (int i = 0; i < l; i++) {
-            barr[i * 2] = (byte) (list.get(i) & 0xFF);
-            barr[i * 2 + 1] = (byte) ((list.get(i) >> 8) & 0xFF);
+            if (bits > 0) {
+                packed[words++] = acc;
+            }
+            packed[words++] = 0xFFFF;
+            return packed;
         }
-        return barr;
-    }
-
-    private static byte[] pointerListToBarr(List<PointerEntry> ptrList) {
-        byte[] data = new byte[ptrList.size() * 8];
-        int l = ptrList.size();
-        for (int i = 0; i < l; i++) {
-            int ofs = i * 8;
-            PointerEntry ent = ptrList.get(i);
-            data[ofs] = (byte) (ent.ptr & 0xFF);
-            data[ofs + 1] = (byte) ((ent.ptr >> 8) & 0xFF);
-            data[ofs + 2] = (byte) ((ent.ptr >> 16) & 0xFF);
-            data[ofs + 3] = (byte) ((ent.ptr >> 24) & 0xFF);
-            data[ofs + 4] = (byte) (ent.chars & 0xFF);
-            data[ofs + 5] = (byte) ((ent.chars >> 8) & 0xFF);
-            data[ofs + 6] = (byte) ((ent.chars >> 16) & 0xFF);
-            data[ofs + 7] = (byte) ((ent.chars >> 24) & 0xFF);
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size + 1);
         }
-        return data;
+        data[size++] = 0xFFFF;
+        return size == data.length ? data : Arrays.copyOf(data, size);
     }
 
-    private static byte[] listOfWordListToBarr(List<List<Integer>> list) {
-        int tlen = 0;
-        for (List<Integer> subList : list) {
-            tlen += subList.size() * 2;
-        }
-        byte[] barr = new byte[tlen];
-        int offs = 0;
-        for (List<Integer> slist : list) {
-            for (Integer aSlist : slist) {
-                barr[offs] = (byte) (aSlist & 0xFF);
-                barr[offs + 1] = (byte) ((aSlist >> 8) & 0xFF);
-                offs += 2;
-            }
-        }
-        return barr;
+    private static void writeWord(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
     }
 
-    private static class PointerEntry {
-
-        private int ptr;
-        private int chars;
-
-        public PointerEntry(int ptr, int chars) {
-            this.ptr = ptr;
-            this.chars = chars;
-        }
+    private static void writeLong(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value & 0xFF);
+        data[offset + 1] = (byte) ((value >> 8) & 0xFF);
+        data[offset + 2] = (byte) ((value >> 16) & 0xFF);
+        data[offset + 3] = (byte) ((value >> 24) & 0xFF);
     }
 
 }
@@ -6,36 +6,30 @@ package thenewpoketext;
 /*--  Ported to Java and customized by Dabomstew                            --*/
 /*----------------------------------------------------------------------------*/
 
-import java.io.FileNotFoundException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Scanner;
+import java.io.IOException;
 
-import com.dabomstew.pkrandom.FileFunctions;
+import com.dabomstew.pkrandom.TextTable;
+import com.dabomstew.pkrandom.TextTrie;
 
 public class UnicodeParser {
 
-    public static String[] tb = new String[65536];
-    public static Map<String, Integer> d = new HashMap<>();
+    // Both tables are built the first time this class is used, which is the
+    // first time a Gen 4 text bank is read or written
+    static String[] tb = new String[0];
+    static TextTrie d = new TextTrie();
 
     static {
         try {
-            Scanner sc = new Scanner(FileFunctions.openConfig("Generation4.tbl"), "UTF-8");
-            while (sc.hasNextLine()) {
-                String q = sc.nextLine();
-                if (!q.trim().isEmpty()) {
-                    String[] r = q.split("=", 2);
-                    if (r[1].endsWith("\r\n")) {
-                        r[1] = r[1].substring(0, r[1].length() - 2);
-                    }
-                    tb[Integer.parseInt(r[0], 16)] = r[1];
-                    d.put(r[1], Integer.parseInt(r[0], 16));
-                }
-            }
-            sc.close();
-        } catch (FileNotFoundException e) {
+            TextTable table = TextTable.load("Generation4.tbl");
+            tb = table.getDecodeTable();
+            d = table.getEncodeTrie();
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    static String lookup(int code) {
+        return code < tb.length ? tb[code] : null;
+    }
+
 }